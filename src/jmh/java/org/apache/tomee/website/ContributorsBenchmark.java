@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+// static parsing and gravatar hashing of the lines of community/contributors.adoc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContributorsBenchmark {
+    private List<String> lines;
+    private List<String> mails;
+
+    @Setup
+    public void setup() throws IOException {
+        lines = Files.readAllLines(Paths.get("src/main/jbake/content/community/contributors.adoc"), StandardCharsets.UTF_8).stream()
+                .filter(l -> l.contains("@"))
+                .map(String::trim)
+                .collect(toList());
+        mails = lines.stream().map(l -> l.split(" *\\| *")[0].replaceAll("\\*$", "")).collect(toList());
+    }
+
+    @Benchmark
+    public void loadStatic(final Blackhole blackhole) {
+        for (final String line : lines) {
+            blackhole.consume(Contributors.loadStatic(line));
+        }
+    }
+
+    @Benchmark
+    public void gravatarHash(final Blackhole blackhole) {
+        for (final String mail : mails) {
+            blackhole.consume(Contributors.gravatarHash(mail));
+        }
+    }
+}
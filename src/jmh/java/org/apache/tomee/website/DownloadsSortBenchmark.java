@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// sorts the rows of download-archive.adoc (shuffled) with the Downloads comparator
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DownloadsSortBenchmark {
+    private List<Downloads.Download> downloads;
+
+    @Setup
+    public void setup() throws IOException {
+        downloads = new ArrayList<>();
+        for (final String line : Files.readAllLines(Paths.get("src/main/jbake/content/download-archive.adoc"), StandardCharsets.UTF_8)) {
+            final String[] columns = line.split("\\|");
+            if (columns.length < 7 || !columns[6].trim().startsWith("http")) {
+                continue;
+            }
+
+            final String url = columns[6].trim().substring(0, columns[6].trim().indexOf('['));
+            final Downloads.Download download = new Downloads.Download(
+                    columns[1], "", columns[2], columns[5], url, url + ".md5", url + ".sha1");
+            download.setDate(columns[3]);
+            downloads.add(download);
+        }
+        Collections.shuffle(downloads, new Random(1234));
+    }
+
+    @Benchmark
+    public List<Downloads.Download> sort() {
+        final List<Downloads.Download> copy = new ArrayList<>(downloads);
+        copy.sort(Downloads.ORDER);
+        return copy;
+    }
+}
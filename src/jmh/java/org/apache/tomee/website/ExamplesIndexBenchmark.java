@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+// keyword classification of the examples of examples.cache
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExamplesIndexBenchmark {
+    private List<Examples.Example> examples;
+
+    @Setup
+    public void setup() {
+        examples = Examples.loadAll().getAll().values().stream()
+                .flatMap(Collection::stream)
+                .distinct()
+                .sorted(comparing(Examples.Example::getName))
+                .collect(toList());
+    }
+
+    @Benchmark
+    public void keywords(final Blackhole blackhole) {
+        for (final Examples.Example example : examples) {
+            Examples.keywords(example.getName()).forEach(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<Examples.Example>> index() {
+        return Examples.index(examples);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import lombok.NoArgsConstructor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// reads the attribute entries of an asciidoc document header without asciidoctor (no JRuby),
+// only the lines until the end of the header are read. Attribute references in values are not substituted.
+@NoArgsConstructor(access = PRIVATE)
+public class AdocHeaderScanner {
+    private static final Pattern ATTRIBUTE = Pattern.compile("^:(!?)([^:!\\s][^:!]*?)(!?):(?:\\s+(.*))?$");
+
+    public static Map<String, String> attributes(final Path file) throws IOException {
+        final Map<String, String> attributes = new HashMap<>();
+        try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            boolean started = false;
+            boolean inComment = false;
+            boolean titleSeen = false;
+            int implicitLines = 0; // author and revision lines right after the title
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!started && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                    line = line.substring(1);
+                }
+                if (inComment) {
+                    inComment = !"////".equals(line);
+                    continue;
+                }
+                if ("////".equals(line)) {
+                    inComment = true;
+                    continue;
+                }
+                if (line.trim().isEmpty()) {
+                    if (started) {
+                        break; // end of the header
+                    }
+                    continue;
+                }
+                if (line.startsWith("//")) {
+                    continue;
+                }
+
+                started = true;
+                if (!titleSeen && (line.startsWith("= ") || line.startsWith("# "))) {
+                    titleSeen = true;
+                    continue;
+                }
+
+                final Matcher matcher = ATTRIBUTE.matcher(line);
+                if (matcher.matches()) {
+                    final String name = matcher.group(2).trim();
+                    if (!matcher.group(1).isEmpty() || !matcher.group(3).isEmpty()) {
+                        attributes.remove(name);
+                    } else {
+                        attributes.put(name, readValue(reader, matcher.group(4)));
+                    }
+                } else if (titleSeen && implicitLines < 2 && attributes.isEmpty()) {
+                    implicitLines++;
+                } else {
+                    break; // not a header line, document content starts
+                }
+            }
+        }
+        return attributes;
+    }
+
+    // values ending with " \" continue on the next line
+    private static String readValue(final BufferedReader reader, final String firstLine) throws IOException {
+        if (firstLine == null) {
+            return "";
+        }
+
+        String value = firstLine.trim();
+        while (value.endsWith(" \\")) {
+            final String next = reader.readLine();
+            value = value.substring(0, value.length() - 2);
+            if (next == null) {
+                break;
+            }
+            value = value + ' ' + next.trim();
+        }
+        return value;
+    }
+}
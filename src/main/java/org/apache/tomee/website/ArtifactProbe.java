@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// reads the metadata (Last-Modified, Content-Length) of remote artifacts with HEAD requests so no body is downloaded.
+// At most "concurrency" requests run at the same time and HttpURLConnection reuses the connections (keep-alive)
+// as long as the responses are consumed so the number of sockets stays bounded too (see http.maxConnections).
+// Timeouts, connection errors, 429 and 5xx responses are retried with an exponential backoff.
+public class ArtifactProbe implements AutoCloseable {
+    private final ScheduledExecutorService executor;
+    private final int timeout;
+    private final int retries;
+    private final long backoff;
+
+    public ArtifactProbe(final int concurrency, final int timeout, final int retries, final long backoff) {
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(concurrency, r -> {
+            final Thread thread = new Thread(r);
+            thread.setName("artifact-probe-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeout = timeout;
+        this.retries = retries;
+        this.backoff = backoff;
+    }
+
+    public CompletableFuture<Head> head(final String url) {
+        final CompletableFuture<Head> result = new CompletableFuture<>();
+        executor.execute(() -> attempt(url, 0, result));
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void attempt(final String url, final int attempt, final CompletableFuture<Head> result) {
+        try {
+            final Head head = doHead(url);
+            if ((head.getStatus() == 429 || head.getStatus() >= 500) && attempt < retries) {
+                retry(url, attempt, result);
+            } else {
+                result.complete(head);
+            }
+        } catch (final IOException e) {
+            if (attempt < retries) {
+                retry(url, attempt, result);
+            } else {
+                result.completeExceptionally(e);
+            }
+        } catch (final RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void retry(final String url, final int attempt, final CompletableFuture<Head> result) {
+        executor.schedule(() -> attempt(url, attempt + 1, result), backoff << attempt, TimeUnit.MILLISECONDS);
+    }
+
+    private Head doHead(final String url) throws IOException {
+        final HttpURLConnection connection = HttpURLConnection.class.cast(new URL(url).openConnection());
+        connection.setRequestMethod("HEAD");
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setInstanceFollowRedirects(true);
+
+        final Head head = new Head();
+        head.setStatus(connection.getResponseCode());
+        head.setLastModified(connection.getHeaderField("Last-Modified"));
+        head.setContentLength(connection.getContentLengthLong());
+        head.setAcceptRanges(connection.getHeaderField("Accept-Ranges"));
+
+        // consume the (empty) response to give the connection back to the keep-alive cache
+        final InputStream stream = head.getStatus() < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (stream != null) {
+            stream.close();
+        }
+        return head;
+    }
+
+    @Data
+    public static class Head {
+        private int status;
+        private String lastModified;
+        private long contentLength;
+        private String acceptRanges;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import org.apache.commons.configuration.CompositeConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// concatenates and minifies the assets listed in jbake.properties (bundle.<name>.<css|js>.files) in a single file
+// named after its content (css/<name>-<hash>.css, js/<name>-<hash>.js) so browsers can cache it forever.
+// The bundle path is exposed to the templates as ${config.bundle_<name>_<css|js>}.
+public class AssetBundler {
+    private static final Pattern BUNDLE_KEY = Pattern.compile("bundle\\.([a-zA-Z0-9_-]+)\\.(css|js)\\.files");
+    private static final Pattern CSS_URL = Pattern.compile("url\\(\\s*(['\"]?)([^'\")]+)\\1\\s*\\)");
+    private static final Pattern CSS_IMPORT = Pattern.compile("@import[^;]+;");
+
+    private final File assets;
+    private final File destination;
+    private final CompositeConfiguration config;
+
+    public AssetBundler(final File assets, final File destination, final CompositeConfiguration config) {
+        this.assets = assets;
+        this.destination = destination;
+        this.config = config;
+    }
+
+    /**
+     * @return true if a bundle path changed, pages referencing it must be rendered again.
+     */
+    public boolean bundle() throws IOException {
+        final List<String> keys = new ArrayList<>();
+        for (final Iterator<String> it = config.getKeys("bundle"); it.hasNext(); ) {
+            keys.add(it.next());
+        }
+
+        boolean changed = false;
+        for (final String key : keys) {
+            final Matcher matcher = BUNDLE_KEY.matcher(key);
+            if (!matcher.matches()) {
+                continue;
+            }
+
+            final String name = matcher.group(1);
+            final String type = matcher.group(2);
+            final String path = bundle(name, type, config.getStringArray(key));
+            final String property = "bundle." + name + "." + type;
+            if (!path.equals(config.getString(property))) {
+                config.setProperty(property, path);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private String bundle(final String name, final String type, final String[] files) throws IOException {
+        final StringBuilder content = new StringBuilder();
+        if ("css".equals(type)) {
+            final StringBuilder imports = new StringBuilder(); // only valid at the beginning of the stylesheet
+            for (final String file : files) {
+                final Matcher matcher = CSS_IMPORT.matcher(rebaseUrls(read(file), file, type));
+                while (matcher.find()) {
+                    imports.append(matcher.group()).append('\n');
+                }
+                content.append(minifyCss(matcher.replaceAll(""))).append('\n');
+            }
+            content.insert(0, imports);
+        } else {
+            for (final String file : files) {
+                final String js = read(file);
+                content.append(file.endsWith(".min.js") ? js.trim() : minifyJs(js)).append(";\n"); // files can miss the last ;
+            }
+        }
+
+        final byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+        final String bundle = type + '/' + name + '-' + hash(bytes) + '.' + type;
+        final Path target = destination.toPath().resolve(bundle);
+        if (!Files.exists(target)) {
+            Files.createDirectories(target.getParent());
+            Files.write(target, bytes);
+        }
+
+        // drop the previous versions of the bundle
+        final Pattern previous = Pattern.compile(Pattern.quote(name) + "-[0-9a-f]{10}\\." + type);
+        final File[] siblings = target.getParent().toFile().listFiles((dir, file) -> previous.matcher(file).matches());
+        if (siblings != null) {
+            for (final File sibling : siblings) {
+                if (!sibling.toPath().equals(target) && !sibling.delete()) {
+                    System.err.println("Can't delete " + sibling);
+                }
+            }
+        }
+        return bundle;
+    }
+
+    private String read(final String file) throws IOException {
+        final String content = new String(Files.readAllBytes(new File(assets, file).toPath()), StandardCharsets.UTF_8);
+        return !content.isEmpty() && content.charAt(0) == '\uFEFF' ? content.substring(1) : content; // BOM
+    }
+
+    // the bundle is in <type>/ so relative urls of stylesheets coming from other folders must be rewritten
+    private static String rebaseUrls(final String css, final String file, final String type) {
+        final Path from = Paths.get(file).getParent();
+        final Path to = Paths.get(type);
+        if (to.equals(from)) {
+            return css;
+        }
+
+        final Matcher matcher = CSS_URL.matcher(css);
+        final StringBuffer out = new StringBuffer(css.length());
+        while (matcher.find()) {
+            final String url = matcher.group(2).trim();
+            if (url.startsWith("data:") || url.startsWith("/") || url.startsWith("#") || url.contains("://")) {
+                continue;
+            }
+
+            int end = url.length();
+            for (final char c : new char[]{'?', '#'}) {
+                final int idx = url.indexOf(c);
+                if (idx >= 0 && idx < end) {
+                    end = idx;
+                }
+            }
+            final Path resolved = (from == null ? Paths.get(url.substring(0, end)) : from.resolve(url.substring(0, end))).normalize();
+            final String rebased = to.relativize(resolved).toString().replace(File.separatorChar, '/') + url.substring(end);
+            matcher.appendReplacement(out, Matcher.quoteReplacement("url('" + rebased + "')"));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    // drops comments (except /*! licenses) and useless whitespaces, strings are kept as they are
+    static String minifyCss(final String css) {
+        final StringBuilder out = new StringBuilder(css.length());
+        boolean space = false;
+        for (int i = 0; i < css.length(); i++) {
+            final char c = css.charAt(i);
+            if (c == '/' && i + 1 < css.length() && css.charAt(i + 1) == '*') {
+                final int end = css.indexOf("*/", i + 2);
+                final int last = end < 0 ? css.length() : end + 2;
+                if (i + 2 < css.length() && css.charAt(i + 2) == '!') {
+                    out.append(css, i, last).append('\n');
+                }
+                i = last - 1;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+
+            if (c == '}' && out.length() > 0 && out.charAt(out.length() - 1) == ';') {
+                out.setLength(out.length() - 1);
+            }
+            if (space && out.length() > 0 && "{};,>:\n".indexOf(out.charAt(out.length() - 1)) < 0 && "{};,>".indexOf(c) < 0) {
+                out.append(' ');
+            }
+            space = false;
+            if (c == '"' || c == '\'') {
+                i = copyString(css, i, out);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    // conservative (jsmin like): drops comments (except /*! licenses), indentation and blank lines.
+    // Line breaks are kept where they can end a statement (automatic semicolon insertion).
+    static String minifyJs(final String js) {
+        final StringBuilder out = new StringBuilder(js.length());
+        boolean space = false;
+        boolean newLine = false;
+        for (int i = 0; i < js.length(); i++) {
+            final char c = js.charAt(i);
+            final char next = i + 1 < js.length() ? js.charAt(i + 1) : 0;
+            if (c == '/' && next == '/') {
+                while (i + 1 < js.length() && js.charAt(i + 1) != '\n') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '/' && next == '*') {
+                final int end = js.indexOf("*/", i + 2);
+                final int last = end < 0 ? js.length() : end + 2;
+                if (i + 2 < js.length() && js.charAt(i + 2) == '!') {
+                    separate(out, space, newLine, c);
+                    out.append(js, i, last).append('\n');
+                    space = false;
+                    newLine = false;
+                } else if (js.substring(i, last).indexOf('\n') >= 0) {
+                    newLine = true;
+                } else {
+                    space = true;
+                }
+                i = last - 1;
+                continue;
+            }
+            if (c == '\n' || c == '\r') {
+                newLine = true;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+
+            separate(out, space, newLine, c);
+            space = false;
+            newLine = false;
+            if (c == '"' || c == '\'') {
+                i = copyString(js, i, out);
+            } else if (c == '/' && isRegexStart(out)) {
+                i = copyRegex(js, i, out);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString().trim();
+    }
+
+    // keeps the line break if it can be a statement end and the space if the tokens would merge otherwise
+    private static void separate(final StringBuilder out, final boolean space, final boolean newLine, final char next) {
+        if (out.length() == 0 || !space && !newLine) {
+            return;
+        }
+
+        final char previous = out.charAt(out.length() - 1);
+        if (newLine && "{;,([\n".indexOf(previous) < 0) {
+            out.append('\n');
+        } else if (isIdentifierPart(previous) && isIdentifierPart(next)
+                || previous == next && (next == '+' || next == '-' || next == '/')) {
+            out.append(' ');
+        }
+    }
+
+    private static boolean isIdentifierPart(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '\\' || c > 126;
+    }
+
+    // a slash starts a regex and not a division when it can't follow an expression
+    private static boolean isRegexStart(final StringBuilder out) {
+        int i = out.length() - 1;
+        while (i >= 0 && Character.isWhitespace(out.charAt(i))) {
+            i--;
+        }
+        if (i < 0 || "(,=:[!&|?{};+-*%<>~^".indexOf(out.charAt(i)) >= 0) {
+            return true;
+        }
+
+        int start = i;
+        while (start >= 0 && isIdentifierPart(out.charAt(start))) {
+            start--;
+        }
+        switch (out.substring(start + 1, i + 1)) {
+            case "return":
+            case "typeof":
+            case "case":
+            case "do":
+            case "else":
+            case "in":
+            case "void":
+            case "delete":
+            case "throw":
+            case "new":
+            case "instanceof":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int copyString(final String content, final int start, final StringBuilder out) {
+        final char quote = content.charAt(start);
+        out.append(quote);
+        int i = start + 1;
+        while (i < content.length()) {
+            final char c = content.charAt(i);
+            out.append(c);
+            if (c == '\\' && i + 1 < content.length()) {
+                out.append(content.charAt(++i));
+            } else if (c == quote) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int copyRegex(final String js, final int start, final StringBuilder out) {
+        out.append('/');
+        boolean inClass = false;
+        int i = start + 1;
+        while (i < js.length()) {
+            final char c = js.charAt(i);
+            out.append(c);
+            if (c == '\\' && i + 1 < js.length()) {
+                out.append(js.charAt(++i));
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass || c == '\n') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static String hash(final byte[] content) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+            final StringBuilder hex = new StringBuilder(10);
+            for (int i = 0; i < 5; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
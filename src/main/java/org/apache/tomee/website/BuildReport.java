@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import lombok.Data;
+import org.apache.johnzon.mapper.MapperBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+// wall time, cpu time and allocated bytes of the build stages and of each rendered document/loader/pdf.
+// Probes record into the report of the running build (if any) so code called from the templates can use them too:
+//   try (final BuildReport.Probe probe = BuildReport.probe("loader", "contributors")) { ... }
+// Stages measure the cpu/allocations of the whole JVM (they can be parallel), other probes the ones of their thread.
+// The report is written as json next to the output (<destination>.report.json) and summarized in the console.
+public class BuildReport {
+    public static final String STAGE = "stage";
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final OperatingSystemMXBean OS = ManagementFactory.getOperatingSystemMXBean();
+    private static final Probe NOOP = new Probe(null, null, null, null, false);
+    private static volatile BuildReport current;
+
+    private final boolean incremental;
+    private final Instant start = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final Collection<Measure> measures = new ConcurrentLinkedQueue<>();
+
+    private BuildReport(final boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public static BuildReport start(final boolean incremental) {
+        final BuildReport report = new BuildReport(incremental);
+        current = report;
+        return report;
+    }
+
+    public static Probe probe(final String category, final String name) {
+        return probe(category, name, null);
+    }
+
+    /**
+     * @param detail an optional grouping key (the template of a document for instance).
+     */
+    public static Probe probe(final String category, final String name, final String detail) {
+        final BuildReport report = current;
+        return report == null ? NOOP : new Probe(report, category, name, detail, STAGE.equals(category));
+    }
+
+    /**
+     * Writes the json report and prints the stages and the top slowest probes.
+     */
+    public void finish(final File destination, final boolean completed) {
+        if (current == this) {
+            current = null;
+        }
+
+        final Report report = new Report();
+        report.setStart(start.toString());
+        report.setIncremental(incremental);
+        report.setCompleted(completed);
+        report.setWallMs(toMs(System.nanoTime() - startNanos));
+        report.setMeasures(new ArrayList<>(measures));
+        report.getMeasures().sort(Comparator.comparingLong(Measure::getStartNanos));
+        report.setTemplates(report.getMeasures().stream()
+                .filter(m -> m.getDetail() != null)
+                .collect(groupingBy(m -> m.getCategory() + ':' + m.getDetail())).values().stream()
+                .map(BuildReport::sum)
+                .sorted(Comparator.comparingDouble(Measure::getWallMs).reversed())
+                .collect(toList()));
+
+        final File json = new File(destination.getAbsoluteFile().getParentFile(), destination.getName() + ".report.json");
+        try (final OutputStream os = Files.newOutputStream(json.toPath())) {
+            new MapperBuilder().setPretty(true).build().writeObject(report, os);
+        } catch (final IOException e) {
+            System.err.println("Can't write " + json + ": " + e.getMessage());
+        }
+
+        final int top = Integer.getInteger("jbake.report.top", 10);
+        System.out.println("Build report (" + json + "), " + format(report.getWallMs()) + " total:");
+        report.getMeasures().stream().filter(m -> STAGE.equals(m.getCategory())).forEach(m -> System.out.println("  " + line(m)));
+        if (!report.getTemplates().isEmpty()) {
+            System.out.println(" templates:");
+            report.getTemplates().stream().limit(top).forEach(m -> System.out.println("  " + line(m)));
+        }
+        System.out.println(" slowest:");
+        report.getMeasures().stream()
+                .filter(m -> !STAGE.equals(m.getCategory()))
+                .sorted(Comparator.comparingDouble(Measure::getWallMs).reversed())
+                .limit(top)
+                .forEach(m -> System.out.println("  " + line(m)));
+    }
+
+    private static Measure sum(final List<Measure> measures) {
+        final Measure first = measures.get(0);
+        final Measure sum = new Measure();
+        sum.setCategory(first.getCategory());
+        sum.setName(first.getDetail() + " (" + measures.size() + ")");
+        sum.setWallMs(measures.stream().mapToDouble(Measure::getWallMs).sum());
+        sum.setCpuMs(measures.stream().mapToDouble(Measure::getCpuMs).filter(v -> v >= 0).sum());
+        sum.setAllocatedBytes(measures.stream().mapToLong(Measure::getAllocatedBytes).filter(v -> v >= 0).sum());
+        return sum;
+    }
+
+    private static String line(final Measure measure) {
+        return String.format("%-9s %-60s %10s wall %10s cpu %10s allocated",
+                measure.getCategory(), measure.getName(), format(measure.getWallMs()), format(measure.getCpuMs()),
+                bytes(measure.getAllocatedBytes()));
+    }
+
+    private static String bytes(final long bytes) {
+        return bytes < 0 ? "-" : bytes >= 1 << 20 ? (bytes >> 20) + "MB" : (bytes >> 10) + "KB";
+    }
+
+    private static String format(final double ms) {
+        return ms < 0 ? "-" : ms >= 1000 ? String.format("%.2fs", ms / 1000) : String.format("%.1fms", ms);
+    }
+
+    private static double toMs(final long nanos) {
+        return nanos < 0 ? -1 : nanos / 1_000_000.;
+    }
+
+    // -1 when the JVM doesn't support it
+    private static long cpuTime(final boolean global) {
+        if (global) {
+            return OS instanceof com.sun.management.OperatingSystemMXBean ?
+                    ((com.sun.management.OperatingSystemMXBean) OS).getProcessCpuTime() : -1;
+        }
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static Map<Long, Long> allocatedBytes(final boolean global) {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        final long[] ids = global ? threads.getAllThreadIds() : new long[]{Thread.currentThread().getId()};
+        final long[] allocated = threads.getThreadAllocatedBytes(ids);
+        final Map<Long, Long> result = new HashMap<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            result.put(ids[i], allocated[i]);
+        }
+        return result;
+    }
+
+    public static class Probe implements AutoCloseable {
+        private final BuildReport report;
+        private final String category;
+        private final String name;
+        private final String detail;
+        private final boolean global;
+        private final long start;
+        private final long cpu;
+        private final Map<Long, Long> allocated;
+
+        private Probe(final BuildReport report, final String category, final String name, final String detail, final boolean global) {
+            this.report = report;
+            this.category = category;
+            this.name = name;
+            this.detail = detail;
+            this.global = global;
+            this.start = System.nanoTime();
+            this.cpu = report == null ? -1 : cpuTime(global);
+            this.allocated = report == null ? null : allocatedBytes(global);
+        }
+
+        @Override
+        public void close() {
+            if (report == null) {
+                return;
+            }
+
+            final long end = System.nanoTime();
+            final long endCpu = cpuTime(global);
+            final Map<Long, Long> endAllocated = allocatedBytes(global);
+
+            final Measure measure = new Measure();
+            measure.setCategory(category);
+            measure.setName(name);
+            measure.setDetail(detail);
+            measure.setStartNanos(start - report.startNanos);
+            measure.setWallMs(toMs(end - start));
+            measure.setCpuMs(cpu < 0 || endCpu < 0 ? -1 : toMs(endCpu - cpu));
+            if (allocated == null || endAllocated == null) {
+                measure.setAllocatedBytes(-1);
+            } else { // threads created during the probe started from 0, the ones which ended are lost
+                measure.setAllocatedBytes(endAllocated.entrySet().stream()
+                        .filter(e -> e.getValue() >= 0)
+                        .mapToLong(e -> e.getValue() - Math.max(0, allocated.getOrDefault(e.getKey(), 0L)))
+                        .sum());
+            }
+            report.measures.add(measure);
+        }
+    }
+
+    @Data
+    public static class Report {
+        private String start;
+        private boolean incremental;
+        private boolean completed;
+        private double wallMs;
+        private List<Measure> measures;
+        private List<Measure> templates;
+    }
+
+    @Data
+    public static class Measure {
+        private String category;
+        private String name;
+        private String detail;
+        private long startNanos;
+        private double wallMs;
+        private double cpuMs;
+        private long allocatedBytes;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import com.orientechnologies.orient.core.Orient;
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.jbake.app.ConfigUtil;
+import org.jbake.app.ContentStore;
+import org.jbake.app.DBUtil;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// keeps Orient, the configuration and the content store alive between bakes (dev loop).
+// All bakes run in the same thread since Orient binds the database to the thread which opened it.
+public class BuildSession implements AutoCloseable {
+    private final File source;
+    private final File destination;
+    private final File configuration;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r);
+        thread.setName("jbake-session");
+        return thread;
+    });
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private ContentStore db;
+    private IncrementalOven oven;
+    private long configurationLastModified = -1;
+    private boolean fullBakeRequired;
+
+    public BuildSession(final File source, final File destination) {
+        this.source = source;
+        this.destination = destination;
+        this.configuration = new File(source, "jbake.properties");
+    }
+
+    /**
+     * @param changes the updated/created/deleted source files or null to force a full bake.
+     * @return the number of rendered documents.
+     * @throws java.util.concurrent.CancellationException if {@link #cancel()} was called while baking.
+     */
+    public int bake(final Collection<Path> changes) {
+        return bake(changes, () -> TemplateData.load(new File(source, "content")).join());
+    }
+
+    /**
+     * @param templateData see IncrementalOven#bake(Collection, java.util.function.BooleanSupplier, Supplier).
+     */
+    public int bake(final Collection<Path> changes, final Supplier<?> templateData) {
+        final long current = generation.get();
+        return execute(() -> {
+            if (reloadConfigurationIfNeeded() && changes != null) {
+                System.out.println("  > " + configuration.getName() + " changed, reloaded it");
+            }
+
+            final boolean full = fullBakeRequired || changes == null;
+            fullBakeRequired = full; // if cancelled the next bake needs to redo it all (assets etc)
+            final int rendered = oven.bake(full ? null : changes, () -> generation.get() != current, templateData);
+            fullBakeRequired = false;
+            return rendered;
+        });
+    }
+
+    // stops the running bake (if any) at the next document, bakes requested after this call are not impacted
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        try {
+            execute(() -> {
+                if (db != null) {
+                    db.close();
+                    Orient.instance().shutdown();
+                }
+                return null;
+            });
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException e) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    // a new configuration can change any rendering so it implies a full bake
+    private boolean reloadConfigurationIfNeeded() throws Exception {
+        final long lastModified = configuration.lastModified();
+        if (oven != null && lastModified == configurationLastModified) {
+            return false;
+        }
+
+        final CompositeConfiguration config = ConfigUtil.load(source);
+        if (db == null) { // db.store/db.path are only read once, changing them requires a restart
+            try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "bake/orient startup")) {
+                Orient.instance().startup();
+                db = DBUtil.createDataStore(config.getString("db.store"), config.getString("db.path"));
+            }
+        }
+        oven = new IncrementalOven(source, destination, config, db);
+        configurationLastModified = lastModified;
+        fullBakeRequired = true;
+        return true;
+    }
+
+    private <T> T execute(final Callable<T> task) {
+        try {
+            return executor.submit(task).get();
+        } catch (final InterruptedException e) {
+            Thread.interrupted();
+            throw new IllegalStateException(e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (RuntimeException.class.isInstance(cause)) {
+                throw RuntimeException.class.cast(cause);
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
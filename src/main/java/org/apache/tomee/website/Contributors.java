@@ -19,14 +19,23 @@ package org.apache.tomee.website;
 import lombok.Builder;
 import lombok.Data;
 import org.apache.johnzon.jaxrs.JohnzonProvider;
+import org.apache.johnzon.mapper.MapperBuilder;
 
 import javax.net.ssl.HttpsURLConnection;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
@@ -34,10 +43,22 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
@@ -47,6 +68,19 @@ import static java.util.stream.Collectors.toList;
 public class Contributors {
     private static final String GRAVATAR_BASE = "http://fr.gravatar.com/";
 
+    // gravatar profiles by hash, fresh ones (-Dcontributors.cache.ttl in seconds, default 7 days) are used without
+    // any request, stale ones are revalidated with their ETag/Last-Modified. Delete the file to reload everything.
+    private static final String CACHE_FILE = "contributors.cache";
+    private static final long CACHE_TTL = TimeUnit.SECONDS.toMillis(Long.getLong("contributors.cache.ttl", TimeUnit.DAYS.toSeconds(7)));
+    private static final Map<String, CachedProfile> PROFILES = new ConcurrentHashMap<>();
+    private static final AtomicBoolean PROFILES_UPDATED = new AtomicBoolean();
+    private static volatile boolean profilesLoaded;
+
+    // -Dcontributors.deadline is the max time (ms) to load the whole list, timeouts are per request
+    private static final long DEADLINE = Long.getLong("contributors.deadline", TimeUnit.SECONDS.toMillis(30));
+    private static final long CONNECT_TIMEOUT = Long.getLong("contributors.timeout.connect", TimeUnit.SECONDS.toMillis(5));
+    private static final long READ_TIMEOUT = Long.getLong("contributors.timeout.read", TimeUnit.SECONDS.toMillis(10));
+
     private Contributors() {
         // no-op
     }
@@ -54,8 +88,9 @@ public class Contributors {
     public static Contributor singleLoad(final WebTarget target, final String input) throws IOException {
         try {
             return ofNullable(loadGravatar(target, input)).orElse(loadStatic(input));
-        } catch (Exception e) {
-            e.printStackTrace();
+        } catch (final Exception e) { // offline builds: one line per contributor is enough
+            System.err.println("Can't load gravatar of " + input.split(" *\\| *")[0].replaceAll("\\*$", "")
+                    + " (" + e.getMessage() + "), using its static data");
             return loadStatic(input);
         }
     }
@@ -79,12 +114,12 @@ public class Contributors {
         final boolean committer = strings[0].endsWith("*");
         final String mail = committer ? strings[0].substring(0, strings[0].length() - 1) : strings[0];
         final String hash = gravatarHash(mail);
-        final Response gravatar = target.path(hash + ".json").request(MediaType.APPLICATION_JSON_TYPE).get();
-        if (gravatar.getStatus() != HttpsURLConnection.HTTP_OK) {
+        final Gravatar gravatar = findProfile(target, hash);
+        if (gravatar == null) {
             System.err.println("[ERROR] No gravatar for " + mail);
             return null;
         }
-        final Contributor contributor = ofNullable(gravatar.readEntity(Gravatar.class).getEntry())
+        final Contributor contributor = ofNullable(gravatar.getEntry())
                 .map(e -> e[0])
                 .map(e -> Contributor.builder()
                         .id(e.getId())
@@ -110,11 +145,21 @@ public class Contributors {
         return contributor;
     }
 
-    public static Collection<Contributor> load(final String contributorsList) throws IOException { // used in page.gsp
-        final WebTarget target = ClientBuilder.newClient().register(new JohnzonProvider()).target(GRAVATAR_BASE);
-        final List<Contributor> contributors = new ArrayList<>();
-        final ExecutorService es = Executors.newFixedThreadPool(16);
-        final String rawList = contributorsList.substring(contributorsList.indexOf("<pre>") + "<pre>".length(), contributorsList.indexOf("</pre>"));
+    public static Collection<Contributor> load(final String contributorsList) throws IOException { // rendered page body
+        return loadList(contributorsList.substring(contributorsList.indexOf("<pre>") + "<pre>".length(), contributorsList.indexOf("</pre>")));
+    }
+
+    // one contributor per line: mail[*] [| name [| picture]], see TemplateData
+    public static Collection<Contributor> loadList(final String rawList) throws IOException {
+        try (final BuildReport.Probe probe = BuildReport.probe("loader", "contributors")) {
+            return loadContributors(rawList);
+        }
+    }
+
+    private static Collection<Contributor> loadContributors(final String rawList) throws IOException {
+        loadProfiles();
+        final long deadline = System.currentTimeMillis() + DEADLINE;
+        final Map<String, CompletableFuture<Contributor>> loading = new LinkedHashMap<>();
         try (final BufferedReader reader = new BufferedReader(new StringReader(rawList))) {
             String line;
             while ((line = reader.readLine()) != null) {
@@ -123,33 +168,127 @@ public class Contributors {
                     continue;
                 }
                 final String mail = line;
-                es.submit(() -> {
-                    Contributor contributor = null;
+                loading.put(mail, CompletableFuture.supplyAsync(() -> {
                     try {
-                        contributor = singleLoad(target, mail);
+                        return singleLoad(Http.TARGET, mail);
                     } catch (final IOException e) {
                         throw new IllegalStateException(e);
                     }
-                    if (contributor != null) {
-                        synchronized (contributors) {
-                            contributors.add(contributor);
-                        }
-                    }
-                });
+                }, Http.EXECUTOR));
             }
         }
-        es.shutdown();
-        try {
-            es.awaitTermination(30, TimeUnit.MINUTES);
-        } catch (final InterruptedException e) {
-            Thread.interrupted();
-            return Collections.emptyList();
+
+        // whatever gravatar does the page is rendered in bounded time. Late profiles are dropped: the pending loads
+        // are cancelled (queued ones don't start) and the cache is saved without them, they are requested next time
+        final List<Contributor> contributors = new ArrayList<>();
+        int late = 0;
+        for (final Map.Entry<String, CompletableFuture<Contributor>> entry : loading.entrySet()) {
+            Contributor contributor;
+            try {
+                contributor = entry.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException e) {
+                late++;
+                entry.getValue().cancel(false);
+                contributor = loadStatic(entry.getKey());
+            } catch (final ExecutionException e) {
+                contributor = loadStatic(entry.getKey());
+            } catch (final InterruptedException e) {
+                Thread.interrupted();
+                return Collections.emptyList();
+            }
+            if (contributor != null) {
+                contributors.add(contributor);
+            }
+        }
+        if (late > 0) {
+            System.err.println(late + " contributor(s) not loaded in " + DEADLINE + "ms, using their static data");
         }
-        Collections.sort(contributors, (o1, o2) -> o1.name.compareTo(o2.id));
+        saveProfiles();
+        Collections.sort(contributors, Comparator.comparing(c -> c.name));
         return contributors;
     }
 
-    private static String gravatarHash(final String mail) {
+    private static Gravatar findProfile(final WebTarget target, final String hash) {
+        final CachedProfile cached = PROFILES.get(hash);
+        final long now = System.currentTimeMillis();
+        if (cached != null && now - cached.getFetched() < CACHE_TTL) {
+            return cached.getProfile();
+        }
+
+        final Invocation.Builder request = target.path(hash + ".json").request(MediaType.APPLICATION_JSON_TYPE);
+        if (cached != null && cached.getEtag() != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, cached.getEtag());
+        }
+        if (cached != null && cached.getLastModified() != null) {
+            request.header(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+        }
+
+        final Response response;
+        try {
+            response = request.get();
+        } catch (final ProcessingException pe) {
+            if (cached != null) { // offline, a stale profile is still better than the static fallback
+                return cached.getProfile();
+            }
+            throw pe;
+        }
+        try {
+            final CachedProfile profile = new CachedProfile();
+            if (response.getStatus() == HttpsURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                profile.setProfile(cached.getProfile());
+                profile.setEtag(cached.getEtag());
+                profile.setLastModified(cached.getLastModified());
+            } else if (response.getStatus() == HttpsURLConnection.HTTP_OK) {
+                profile.setProfile(response.readEntity(Gravatar.class));
+                profile.setEtag(response.getHeaderString(HttpHeaders.ETAG));
+                profile.setLastModified(response.getHeaderString(HttpHeaders.LAST_MODIFIED));
+            } else if (response.getStatus() != HttpsURLConnection.HTTP_NOT_FOUND) {
+                // rate limiting (429), outage (5xx)...: nothing is cached so the next build retries
+                System.err.println("Got " + response.getStatus() + " for gravatar " + hash);
+                return cached == null ? null : cached.getProfile();
+            } // else no profile (404), cached too to not request it again before the TTL expires
+            profile.setFetched(now);
+            PROFILES.put(hash, profile);
+            PROFILES_UPDATED.set(true);
+            return profile.getProfile();
+        } finally {
+            response.close();
+        }
+    }
+
+    private static synchronized void loadProfiles() {
+        if (profilesLoaded) {
+            return;
+        }
+        profilesLoaded = true;
+
+        final File cache = new File(CACHE_FILE);
+        if (!cache.isFile()) {
+            return;
+        }
+        try (final InputStream is = new FileInputStream(cache)) {
+            final ProfileCache profiles = new MapperBuilder().build().readObject(is, ProfileCache.class);
+            ofNullable(profiles.getProfiles()).ifPresent(PROFILES::putAll);
+        } catch (final IOException | RuntimeException e) {
+            System.err.println("Can't read " + CACHE_FILE + " (" + e.getMessage() + "), ignoring it");
+        }
+    }
+
+    private static synchronized void saveProfiles() {
+        if (!PROFILES_UPDATED.getAndSet(false)) {
+            return;
+        }
+
+        final ProfileCache cache = new ProfileCache();
+        cache.setProfiles(new TreeMap<>(PROFILES));
+        try (final OutputStream os = new FileOutputStream(CACHE_FILE)) {
+            new MapperBuilder().setPretty(true).build().writeObject(cache, os);
+        } catch (final IOException e) {
+            System.err.println("Can't write " + CACHE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    static String gravatarHash(final String mail) {
         try {
             final MessageDigest md = MessageDigest.getInstance("MD5");
             byte[] cp1252s = md.digest(mail.getBytes("CP1252"));
@@ -163,6 +302,28 @@ public class Contributors {
         }
     }
 
+    // shared by all the bakes of the JVM (dev mode rebuilds), daemon threads to not prevent the JVM to exit
+    private static class Http {
+        // CXF logs each failed request with its stack trace, singleLoad() already reports it in one line
+        private static final Logger CXF_CHAIN = Logger.getLogger("org.apache.cxf.phase.PhaseInterceptorChain");
+        private static final AtomicInteger THREADS = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(16, r -> {
+            final Thread thread = new Thread(r);
+            thread.setName("contributors-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        private static final WebTarget TARGET = ClientBuilder.newClient()
+                .property("http.connection.timeout", CONNECT_TIMEOUT)
+                .property("http.receive.timeout", READ_TIMEOUT)
+                .register(new JohnzonProvider())
+                .target(GRAVATAR_BASE);
+
+        static {
+            CXF_CHAIN.setLevel(Level.SEVERE);
+        }
+    }
+
     @Data
     @Builder
     public static class Link {
@@ -181,6 +342,19 @@ public class Contributors {
         private List<Link> link;
     }
 
+    @Data
+    public static class ProfileCache {
+        private Map<String, CachedProfile> profiles;
+    }
+
+    @Data
+    public static class CachedProfile {
+        private long fetched;
+        private String etag;
+        private String lastModified;
+        private Gravatar profile;
+    }
+
     @Data
     public static class GravatarName {
         private String formatted;
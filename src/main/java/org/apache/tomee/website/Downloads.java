@@ -2,126 +2,321 @@ package org.apache.tomee.website;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.ToString;
 import org.apache.commons.lang3.text.WordUtils;
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
 import static java.util.Arrays.asList;
 import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static lombok.AccessLevel.PRIVATE;
 
 // regenerate when needed only, useless to do it for any site update
 @RequiredArgsConstructor(access = PRIVATE)
 public class Downloads {
-    private static final SAXParserFactory FACTORY = SAXParserFactory.newInstance();
-    private static final String MVN_BASE = "http://repo.maven.apache.org/maven2/";
+    private static final String MVN_BASE = System.getProperty("downloads.repository", "https://repo.maven.apache.org/maven2/");
     private static final long MEGA_RATIO = 1024 * 1024;
+    private static final String ARTIFACTS = "org/apache/"; // start of the artifact path in the urls
+    private static final String GROUP_SEPARATOR = "||||||";
+    private static final List<String> DISTRIBUTIONS = asList("plume", "plus", "jaxrs", "webprofile"); // page order
+    private static final DateTimeFormatter PAGE_DATE = DateTimeFormatter.ofPattern("d MMM yyyy", Locale.ENGLISH);
 
-    static {
-        FACTORY.setNamespaceAware(false);
-        FACTORY.setValidating(false);
-    }
+    // layout of download-archive.adoc: most recent version first (milestones after their final release), then the
+    // TomEE distributions, then the other artifacts by name, then most recent date.
+    // The keys are computed once per download so comparisons don't parse anything.
+    static final Comparator<Download> ORDER = Comparator.comparing(Download::getSortKey);
+
+    /**
+     * @param args optional page (download-archive.adoc) to update, the artifacts it doesn't list yet are added.
+     *             Without it the rows are printed.
+     */
+    public static void main(final String[] args) throws IOException {
+        final int concurrency = Integer.getInteger("downloads.concurrency", 16);
+        if (System.getProperty("http.maxConnections") == null) { // keep-alive connections per host, read once by the JVM
+            System.setProperty("http.maxConnections", Integer.toString(concurrency));
+        }
 
-    public static void main(final String[] args) {
-        System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", "512");
-        Stream.of(
+        final int timeout = (int) TimeUnit.SECONDS.toMillis(Integer.getInteger("downloads.timeout", 30));
+        final MavenMetadataClient metadata = new MavenMetadataClient(
+                new File(System.getProperty("downloads.metadata.cache", "maven-metadata.cache")), timeout);
+        final Collection<Download> candidates = Stream.of(
                 Stream.of("org/apache/openejb/openejb", "org/apache/tomee/tomee-project")
-                        .flatMap(Downloads::toVersions)
+                        .flatMap(base -> toVersions(metadata, base))
                         .map(v -> v.extensions("zip"))
                         .map(v -> v.classifiers("source-release")),
-                versionStream("apache-tomee")
+                versionStream(metadata, "apache-tomee")
                         .map(v -> v.version.startsWith("1.") ?
                                 v.classifiers("plus", "plume", "webprofile", "jaxrs") : v.classifiers("plus", "plume", "webprofile"))
                         .map(v -> v.extensions("tar.gz", "zip")),
-                versionStream("openejb-standalone")
+                versionStream(metadata, "openejb-standalone")
                         .map(v -> v.extensions("tar.gz", "zip")),
-                versionStream("tomee-webapp")
+                versionStream(metadata, "tomee-webapp")
                         .map(v -> v.extensions("war")),
-                versionStream("tomee-plus-webapp")
+                versionStream(metadata, "tomee-plus-webapp")
                         .map(v -> v.extensions("war")),
-                versionStream("tomee-plume-webapp")
+                versionStream(metadata, "tomee-plume-webapp")
                         .map(v -> v.extensions("war")))
                 .flatMap(s -> s)
                 .flatMap(Downloads::toDownloadable)
-                .parallel()
-                .map(Downloads::fillDownloadable)
-                .filter(Objects::nonNull /* skipped */)
-                .sorted((o1, o2) -> {
-                    final int nameComp = o1.name.compareTo(o2.name);
-                    if (nameComp != 0) {
-                        return nameComp;
-                    }
-
-                    final int versionComp = o2.version.compareTo(o1.version);
-                    if (versionComp != 0) {
-                        if (o2.version.startsWith(o1.version) && o2.version.contains("-M")) { // milestone
-                            return -1;
-                        }
-                        if (o1.version.startsWith(o2.version) && o1.version.contains("-M")) { // milestone
-                            return 1;
-                        }
-                        return versionComp;
-                    }
-
-                    final long dateComp = LocalDateTime.parse(o2.date, RFC_1123_DATE_TIME).toInstant(ZoneOffset.UTC).toEpochMilli()
-                            - LocalDateTime.parse(o1.date, RFC_1123_DATE_TIME).toInstant(ZoneOffset.UTC).toEpochMilli();
-                    if (dateComp != 0) {
-                        return (int) dateComp;
-                    }
-
-                    return o1.url.compareTo(o2.url);
-                })
-                .collect(toList())
-                .forEach(d ->
-                        System.out.println("" +
-                                "|" + d.name + (d.classifier.isEmpty() ? "" : (" " + d.classifier)) +
-                                "|" + d.version +
-                                "|" + d.date +
-                                "|" + d.size + " MB " +
-                                "|" + d.format +
-                                "| " + d.url + "[icon:download[] " + d.format + "] " + d.sha1 + "[icon:download[] sha1] " + d.md5 + "[icon:download[] md5] " + d.asc + "[icon:download[] asc]"));
-    }
-
-    private static Download fillDownloadable(final Download download) {
-        try {
-            final URL url = new URL(download.url);
-            final HttpURLConnection connection = HttpURLConnection.class.cast(url.openConnection());
-            connection.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(30));
-            final int responseCode = connection.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_OK) {
-                if (HttpURLConnection.HTTP_NOT_FOUND != responseCode) {
-                    System.err.println("Got " + responseCode + " for " + download.url);
+                .collect(toList());
+        metadata.save();
+
+        // released artifacts never change so only the ones we never saw (new versions) are probed
+        final File storeFile = new File(System.getProperty("downloads.cache", "downloads.cache"));
+        final Map<String, ArtifactMetadata> store = loadStore(storeFile);
+        final Collection<Download> unknown = candidates.stream()
+                .filter(d -> !store.containsKey(d.url))
+                .collect(toList());
+        if (!unknown.isEmpty()) {
+            final long start = System.currentTimeMillis();
+            try (final ArtifactProbe probe = new ArtifactProbe(concurrency, timeout, 3, 500)) {
+                final Map<String, CompletableFuture<ArtifactMetadata>> probes = new TreeMap<>();
+                unknown.forEach(d -> probes.put(d.url, probe.head(d.url).handle((head, error) -> toMetadata(d, head, error))));
+                probes.forEach((url, result) -> ofNullable(result.join()).ifPresent(m -> store.put(url, m)));
+            }
+            saveStore(storeFile, store);
+            System.err.println("Probed " + unknown.size() + " artifacts in " + (System.currentTimeMillis() - start) + "ms");
+        }
+
+        final Download[] downloads = candidates.stream()
+                .filter(d -> fillDownloadable(d, store.get(d.url)))
+                .toArray(Download[]::new);
+        Arrays.parallelSort(downloads, ORDER);
+        if (args.length > 0) {
+            updatePage(new File(args[0]), asList(downloads));
+        } else {
+            final List<List<String>> groups = new ArrayList<>();
+            merge(groups, asList(downloads), MVN_BASE);
+            toRows(groups).forEach(System.out::println);
+        }
+    }
+
+    // the page is maintained manually too (order, names, links) so its rows are kept as they are and only the
+    // artifacts it doesn't list yet are added, in the same format, to the group (||||||-separated rows) of their version
+    private static void updatePage(final File page, final List<Download> downloads) throws IOException {
+        final List<String> lines = Files.readAllLines(page.toPath(), StandardCharsets.UTF_8);
+        final int header = IntStream.range(0, lines.size())
+                .filter(i -> lines.get(i).startsWith("|Name|"))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No download table in " + page));
+        final int end = IntStream.range(header + 1, lines.size())
+                .filter(i -> lines.get(i).startsWith("|==="))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Download table of " + page + " is not closed"));
+
+        final List<List<String>> groups = toGroups(lines.subList(header + 1, end));
+        final String base = groups.stream() // new rows use the repository url of the page
+                .flatMap(Collection::stream)
+                .map(Downloads::linkOf)
+                .filter(link -> link != null && link.contains(ARTIFACTS))
+                .map(link -> link.substring(0, link.indexOf(ARTIFACTS)))
+                .findFirst()
+                .orElse(MVN_BASE);
+        final int added = merge(groups, downloads, base);
+        if (added == 0) {
+            System.err.println(page + " is up to date");
+            return;
+        }
+
+        final List<String> updated = new ArrayList<>(lines.subList(0, header + 1));
+        updated.addAll(toRows(groups));
+        updated.add("");
+        updated.addAll(lines.subList(end, lines.size()));
+        Files.write(page.toPath(), updated, StandardCharsets.UTF_8);
+        System.err.println("Added " + added + " artifact(s) to " + page);
+    }
+
+    // downloads must be sorted (ORDER), a new version gets its own group before the older versions
+    private static int merge(final List<List<String>> groups, final List<Download> downloads, final String base) {
+        final Set<String> listed = groups.stream()
+                .flatMap(Collection::stream)
+                .map(Downloads::linkOf)
+                .filter(Objects::nonNull)
+                .map(Downloads::artifactOf)
+                .collect(toSet());
+
+        int added = 0;
+        for (final Download download : downloads) {
+            if (!listed.add(artifactOf(download.url))) {
+                continue;
+            }
+
+            final MavenVersion version = new MavenVersion(download.version);
+            List<String> group = null;
+            for (int i = 0; i < groups.size() && group == null; i++) {
+                final int comparison = version.compareTo(new MavenVersion(groups.get(i).get(0).split("\\|")[2]));
+                if (comparison == 0) {
+                    group = groups.get(i);
+                } else if (comparison > 0) {
+                    group = new ArrayList<>();
+                    groups.add(i, group);
                 }
-                return null;
             }
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.add(group);
+            }
+            group.add(toRow(download, base));
+            added++;
+        }
+        return added;
+    }
+
+    private static String toRow(final Download download, final String base) {
+        final String type = download.format.toUpperCase(Locale.ENGLISH);
+        return "" +
+                "|" + download.name + (download.classifier.isEmpty() ? "" : (" " + download.classifier)) +
+                "|" + download.version +
+                "|" + download.date +
+                "|" + download.size + " MB " +
+                "|" + type +
+                "| " + base + artifactOf(download.url) + "[icon:download[] " + type + "] " +
+                base + artifactOf(download.sha1) + "[icon:download[] SHA1] " +
+                base + artifactOf(download.md5) + "[icon:download[] MD5]";
+    }
+
+    private static List<List<String>> toGroups(final List<String> rows) {
+        final List<List<String>> groups = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        for (final String row : rows) {
+            if (row.startsWith(GROUP_SEPARATOR) || row.trim().isEmpty()) {
+                if (!group.isEmpty() && row.startsWith(GROUP_SEPARATOR)) {
+                    groups.add(group);
+                    group = new ArrayList<>();
+                }
+                continue;
+            }
+            group.add(row);
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
 
-            download.setDate(connection.getHeaderField("Last-Modified").replaceAll(" +", " "));
-            download.setSize(toMega(ofNullable(connection.getHeaderField("Content-Length")).map(Long::parseLong).orElse(0L), ofNullable(connection.getHeaderField("Accept-Ranges")).orElse("bytes")));
+    private static List<String> toRows(final List<List<String>> groups) {
+        final List<String> rows = new ArrayList<>();
+        for (final List<String> group : groups) {
+            if (!rows.isEmpty()) {
+                rows.add(GROUP_SEPARATOR);
+            }
+            rows.addAll(group);
+        }
+        return rows;
+    }
 
-            connection.getInputStream().close();
-        } catch (final IOException e) {
-            e.printStackTrace();
+    // first link of a row (the artifact)
+    private static String linkOf(final String row) {
+        final String[] columns = row.split("\\|");
+        if (columns.length < 7) {
             return null;
         }
-        return download;
+        final String links = columns[6].trim();
+        final int end = links.indexOf('[');
+        return end < 0 ? null : links.substring(0, end);
+    }
+
+    // the url without the repository base (http/https, mirrors)
+    private static String artifactOf(final String url) {
+        final int start = url.indexOf(ARTIFACTS);
+        return start < 0 ? url : url.substring(start);
+    }
+
+    private static boolean fillDownloadable(final Download download, final ArtifactMetadata metadata) {
+        if (metadata == null || metadata.isMissing()) { // probe failed (retried next time) or no such artifact
+            return false;
+        }
+        download.setDate(toPageDate(metadata.getDate()));
+        download.setSize(metadata.getSize());
+        return true;
+    }
+
+    // null means we don't know (error) so the artifact is not stored and will be probed again
+    private static ArtifactMetadata toMetadata(final Download download, final ArtifactProbe.Head head, final Throwable error) {
+        if (error != null) {
+            System.err.println("Can't probe " + download.url + ": " + error.getMessage());
+            return null;
+        }
+        if (head.getStatus() == HttpURLConnection.HTTP_NOT_FOUND) {
+            return new ArtifactMetadata(null, 0);
+        }
+        if (head.getStatus() != HttpURLConnection.HTTP_OK) {
+            System.err.println("Got " + head.getStatus() + " for " + download.url);
+            return null;
+        }
+        return new ArtifactMetadata( // Last-Modified is optional (some mirrors skip it), the date is then unknown (empty)
+                ofNullable(head.getLastModified()).map(date -> date.replaceAll(" +", " ")).orElse(""),
+                toMega(Math.max(0, head.getContentLength()), ofNullable(head.getAcceptRanges()).orElse("bytes")));
+    }
+
+    // Last-Modified (RFC 1123) to the date format of the page, empty when unknown
+    private static String toPageDate(final String lastModified) {
+        if (lastModified.isEmpty()) {
+            return "";
+        }
+        try {
+            return PAGE_DATE.format(ZonedDateTime.parse(lastModified, RFC_1123_DATE_TIME));
+        } catch (final DateTimeParseException e) {
+            return "";
+        }
+    }
+
+    // one artifact per line: url<tab>last-modified<tab>size (MB) or url<tab>- when it doesn't exist (404)
+    private static Map<String, ArtifactMetadata> loadStore(final File file) throws IOException {
+        final Map<String, ArtifactMetadata> store = new TreeMap<>();
+        if (!file.isFile()) {
+            return store;
+        }
+        for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] parts = line.split("\t");
+            if (parts.length == 2 && "-".equals(parts[1])) {
+                store.put(parts[0], new ArtifactMetadata(null, 0));
+            } else if (parts.length == 3) {
+                store.put(parts[0], new ArtifactMetadata(parts[1], Long.parseLong(parts[2])));
+            } else {
+                throw new IllegalStateException("Invalid line in " + file + ": " + line);
+            }
+        }
+        return store;
+    }
+
+    private static void saveStore(final File file, final Map<String, ArtifactMetadata> store) throws IOException {
+        final List<String> lines = new ArrayList<>(store.size() + 1);
+        lines.add("# url\tlast-modified\tsize (MB), '-' when the artifact doesn't exist");
+        store.forEach((url, metadata) -> lines.add(url + '\t'
+                + (metadata.isMissing() ? "-" : (metadata.getDate() + '\t' + metadata.getSize()))));
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
     }
 
     private static long toMega(final long length, final String bytes) {
@@ -131,10 +326,10 @@ public class Downloads {
         return length / MEGA_RATIO;
     }
 
-    private static Stream<Version> versionStream(final String artifactId) {
+    private static Stream<Version> versionStream(final MavenMetadataClient metadata, final String artifactId) {
         return Stream.of(artifactId)
                 .flatMap(s -> Stream.of("org/apache/tomee/" + s, "org/apache/openejb/" + s))
-                .flatMap(Downloads::toVersions);
+                .flatMap(base -> toVersions(metadata, base));
     }
 
     private static Stream<Download> toDownloadable(final Version version) {
@@ -148,27 +343,19 @@ public class Downloads {
 
     private static Download toDownload(final String artifactId, final String classifier, final String version, final String format, final String url) {
         return new Download(
-                WordUtils.capitalize(artifactId.replace('-', ' ')).replace("Openejb", "OpenEJB").replace("Tomee", "TomEE"),
+                WordUtils.capitalize(artifactId.replace('-', ' ')).replace("Openejb", "OpenEJB").replace("Tomee", "TomEE")
+                        .replace("Apache TomEE", "TomEE"),
                 classifier,
                 version,
                 format,
                 url,
                 url + ".md5",
-                url + ".sha1",
-                url + ".asc");
+                url + ".sha1");
     }
 
-    private static Stream<Version> toVersions(final String baseUrl) {
-        final QuickMvnMetadataParser handler = new QuickMvnMetadataParser();
+    private static Stream<Version> toVersions(final MavenMetadataClient metadata, final String baseUrl) {
         final String base = MVN_BASE + baseUrl;
-        try (final InputStream stream = new URL(base + "/maven-metadata.xml").openStream()) {
-            final SAXParser parser = FACTORY.newSAXParser();
-            parser.parse(stream, handler);
-            return handler.foundVersions.stream().map(v -> new Version(base, v)).parallel();
-        } catch (final Exception e) {
-            e.printStackTrace();
-            return Stream.empty();
-        }
+        return metadata.versions(base + "/maven-metadata.xml").stream().map(v -> new Version(base, v));
     }
 
     @AllArgsConstructor
@@ -196,6 +383,18 @@ public class Downloads {
     }
 
     @Data
+    public static class ArtifactMetadata {
+        private final String date; // null if the artifact doesn't exist, empty if unknown
+        private final long size;
+
+        public boolean isMissing() {
+            return date == null;
+        }
+    }
+
+    @Data
+    @EqualsAndHashCode(exclude = "sortKey")
+    @ToString(exclude = "sortKey")
     public static class Download {
         private final String name;
         private final String classifier;
@@ -204,44 +403,49 @@ public class Downloads {
         private final String url;
         private final String md5;
         private final String sha1;
-        private final String asc;
-        private String date;
+        private String date; // d MMM yyyy (page format), empty if unknown
         private long size;
+
+        @Getter(lazy = true, value = PRIVATE)
+        private final SortKey sortKey = new SortKey(this);
     }
 
-    private static class QuickMvnMetadataParser extends DefaultHandler {
-        private boolean versioning = false;
-        private boolean versions = false;
-        private StringBuilder version;
-        private final Collection<String> foundVersions = new ArrayList<>();
+    // immutable view of a download used to sort them, the date must be set when it is created
+    private static final class SortKey implements Comparable<SortKey> {
+        private final MavenVersion version;
+        private final int distribution;
+        private final String name;
+        private final long date;
+        private final String url;
 
-        @Override
-        public void startElement(final String uri, final String localName,
-                                 final String name, final Attributes attributes) throws SAXException {
-            if ("versioning".equalsIgnoreCase(name)) {
-                versioning = true;
-            } else if ("versions".equalsIgnoreCase(name)) {
-                versions = true;
-            } else if (versioning && versions && "version".equalsIgnoreCase(name)) {
-                version = new StringBuilder();
-            }
+        private SortKey(final Download download) {
+            final int index = "TomEE".equals(download.name) ? DISTRIBUTIONS.indexOf(download.classifier) : -1;
+            this.version = new MavenVersion(download.version);
+            this.distribution = index < 0 ? DISTRIBUTIONS.size() : index;
+            this.name = download.name + (download.classifier.isEmpty() ? "" : (" " + download.classifier));
+            this.date = download.date.isEmpty() ? 0 : LocalDate.parse(download.date, PAGE_DATE).toEpochDay();
+            this.url = download.url;
         }
 
         @Override
-        public void characters(final char[] ch, final int start, final int length) throws SAXException {
-            if (version != null) {
-                version.append(new String(ch, start, length));
+        public int compareTo(final SortKey other) {
+            final int versionComp = other.version.compareTo(version);
+            if (versionComp != 0) {
+                return versionComp;
             }
-        }
-
-        public void endElement(final String uri, final String localName, final String name) throws SAXException {
-            if ("versioning".equalsIgnoreCase(name)) {
-                versioning = false;
-            } else if ("versions".equalsIgnoreCase(name)) {
-                versions = false;
-            } else if ("version".equalsIgnoreCase(name)) {
-                foundVersions.add(version.toString());
+            final int distributionComp = Integer.compare(distribution, other.distribution);
+            if (distributionComp != 0) {
+                return distributionComp;
+            }
+            final int nameComp = name.compareToIgnoreCase(other.name);
+            if (nameComp != 0) {
+                return nameComp;
+            }
+            final int dateComp = Long.compare(other.date, date);
+            if (dateComp != 0) {
+                return dateComp;
             }
+            return url.compareTo(other.url);
         }
     }
 }
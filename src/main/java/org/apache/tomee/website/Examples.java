@@ -1,45 +1,67 @@
 package org.apache.tomee.website;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.apache.johnzon.jaxrs.JohnzonProvider;
 import org.apache.johnzon.mapper.JohnzonProperty;
 import org.apache.johnzon.mapper.MapperBuilder;
 
-import javax.ws.rs.ForbiddenException;
-import javax.ws.rs.NotFoundException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
-import java.io.StringWriter;
-import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static java.util.Arrays.asList;
 import static java.util.Optional.ofNullable;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+import static lombok.AccessLevel.NONE;
 import static lombok.AccessLevel.PRIVATE;
 import static org.apache.commons.codec.binary.Base64.decodeBase64;
 
@@ -49,31 +71,73 @@ public class Examples {
 
     // don't load it for each page, would be pretty inefficient
     private static final Map<String, Collection<Example>> CACHE = new TreeMap<>();
+    private static String catalogueEtag;
     private static final String CACHE_FILE = "examples.cache";
+    private static final String CACHE_MAGIC = "EXAMPLES-CACHE";
+    private static final String CACHE_VERSION = "3";
+    // applied in order on the example name before splitting it on '-' to extract the keywords
+    private static final String[][] KEYWORD_REPLACEMENTS = {
+            {"application-composer", "applicationcomposer"},
+            {"configproperty", "config"},
+            {"descriptors", "descriptor"},
+            {"ejbs", "ejb"},
+            {"env-entry", "enventry"},
+            {"events", "event"},
+            {"interceptors", "interceptor"}
+    };
+    private static final Pattern JBAKE_DATE = Pattern.compile("^:jbake-date: (.*)$", Pattern.MULTILINE);
     private static final Collection<String> EXCLUDED_KEYWORDS = new HashSet<>(asList(
             "with", "jvm", "preview", "demo", "to", "a", "access", "and", "app", "application", "auto", "basic", "bean", "by", "change", "complete",
             "composer", "custom", "declared", "example", "handling", "in", "by", "change", "simple", "interface"));
 
+    // each example is written once (whatever its number of tags) and only if its content changed,
+    // the previous jbake-date is kept for unchanged examples to not touch the files (incremental builds)
     public static void populateTree() {
         final String date = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
         load();
-        CACHE.forEach((tag, examples) -> examples.forEach(e -> {
-            try (final Writer w = new FileWriter("src/main/jbake/content/examples/" + e.getName() + ".adoc")) {
-                w.write("= " + findTitle(e.getName(), e.getReadme()) + "\n" +
-                        ":jbake-date: " + date + "\n" +
-                        ":jbake-type: page\n" +
-                        ":jbake-tomeepdf:\n" +
-                        ":jbake-status: published\n\n" +
-                        "Example " + e.getName() + " can be browsed at " + e.getUrl() + "\n\n" +
-                        mdToAdoc(e.getReadme()));
-            } catch (final IOException ioe) {
-                throw new IllegalStateException(ioe);
-            }
-        }));
+        final Path folder = Paths.get("src/main/jbake/content/examples");
+        final AtomicInteger written = new AtomicInteger();
+        CACHE.values().stream().flatMap(Collection::stream)
+                .collect(toMap(Example::getName, identity(), (e1, e2) -> e1))
+                .values().parallelStream()
+                .forEach(e -> {
+                    final Path target = folder.resolve(e.getName() + ".adoc");
+                    try {
+                        if (Files.isRegularFile(target)) {
+                            final byte[] existing = Files.readAllBytes(target);
+                            final String previousDate = findDate(new String(existing, StandardCharsets.UTF_8));
+                            if (previousDate != null && Arrays.equals(existing, toAdoc(e, previousDate))) {
+                                return;
+                            }
+                        }
+                        Files.write(target, toAdoc(e, date));
+                        written.incrementAndGet();
+                    } catch (final IOException ioe) {
+                        throw new IllegalStateException(ioe);
+                    }
+                });
+        System.out.println(written.get() + " example(s) written");
+    }
+
+    private static byte[] toAdoc(final Example e, final String date) {
+        return ("= " + findTitle(e.getName(), e.getReadme()) + "\n" +
+                ":jbake-date: " + date + "\n" +
+                ":jbake-type: page\n" +
+                ":jbake-tomeepdf:\n" +
+                ":jbake-status: published\n\n" +
+                "Example " + e.getName() + " can be browsed at " + e.getUrl() + "\n\n" +
+                MarkdownToAsciidoc.convert(e.getReadme())).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String findDate(final String adoc) {
+        final Matcher matcher = JBAKE_DATE.matcher(adoc);
+        return matcher.find() ? matcher.group(1) : null;
     }
 
     public static ExampleWrapper loadAll() {
-        load();
+        try (final BuildReport.Probe probe = BuildReport.probe("loader", "examples")) {
+            load();
+        }
         return new ExampleWrapper(CACHE, CACHE.values().stream().mapToInt(Collection::size).sum());
     }
 
@@ -83,68 +147,87 @@ public class Examples {
         }
 
         final File cache = new File(CACHE_FILE);
+        final boolean refresh = Boolean.getBoolean("examples.refresh");
         if (cache.isFile()) {
-            System.out.println("Reading examples from cache, delete " + CACHE_FILE + " if you want to reload them");
-            try (final InputStream is = new FileInputStream(cache)) {
-                final ExampleWrapper wrapper = new MapperBuilder().build().readObject(is, ExampleWrapper.class);
-                CACHE.putAll(wrapper.getAll());
-            } catch (IOException e) {
-                throw new IllegalArgumentException(e);
+            System.out.println(refresh ?
+                    "Refreshing examples cache" :
+                    "Reading examples from cache, delete " + CACHE_FILE + " or use -Dexamples.refresh=true if you want to reload them");
+            try {
+                readCache(cache);
+            } catch (final IOException | RuntimeException e) { // handled as a missing cache, never fail the site
+                System.err.println("Can't read " + CACHE_FILE + " (" + e.getMessage() + "), reloading the examples");
+                CACHE.clear();
+                catalogueEtag = null;
+            }
+            if (!refresh && !CACHE.isEmpty()) {
+                return;
             }
-            return;
         }
 
+        // refresh: only the README.md of the folders which changed (git sha) are requested and conditionally (etag),
+        // note that github doesn't count 304 responses in the rate limit
+        final Map<String, Example> previous = CACHE.values().stream().flatMap(Collection::stream)
+                .collect(toMap(Example::getName, identity(), (e1, e2) -> e1));
         final Client client = ClientBuilder.newClient().register(new JohnzonProvider<>());
         try {
-            final WebTarget github = client.target("https://api.github.com");
+            final WebTarget github = client.target(System.getProperty("github.base", "https://api.github.com"));
             final Invocation.Builder request = github.path("repos/apache/tomee/contents/examples").request(APPLICATION_JSON_TYPE);
             final String auth = System.getProperty("github.auth");
             if (auth != null) {
                 request.header("Authorization", auth);
             }
-            request
-                    .get(new GenericType<Collection<GithubContentItem>>() {
-                    }).stream().filter(i -> "dir".equals(i.getType()))
+            if (catalogueEtag != null && !previous.isEmpty()) {
+                request.header(HttpHeaders.IF_NONE_MATCH, catalogueEtag);
+            }
+
+            final Response catalogue = request.get();
+            final Collection<GithubContentItem> items;
+            try {
+                if (catalogue.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED && !previous.isEmpty()) {
+                    System.out.println("Examples are up to date");
+                    return;
+                }
+                if (catalogue.getStatus() != HttpURLConnection.HTTP_OK) {
+                    if (catalogue.getStatus() == HttpURLConnection.HTTP_FORBIDDEN) {
+                        System.err.println("Can't retrieve examples, set -Dgithub.auth=.... to get a higher rate limit");
+                    }
+                    if (!previous.isEmpty()) {
+                        System.err.println("Can't refresh examples (HTTP " + catalogue.getStatus() + "), keeping the cached ones");
+                        return;
+                    }
+                    throw new IllegalStateException("Can't list examples: HTTP " + catalogue.getStatus());
+                }
+                items = catalogue.readEntity(new GenericType<Collection<GithubContentItem>>() {
+                });
+                catalogueEtag = catalogue.getHeaderString(HttpHeaders.ETAG);
+            } finally {
+                catalogue.close();
+            }
+
+            final AtomicInteger fetched = new AtomicInteger();
+            final List<Example> examples = items.stream().filter(i -> "dir".equals(i.getType()))
                     .parallel()
                     .sorted((i1, i2) -> i1.getName().compareTo(i2.getName()))
-                    .map(i -> new Example(i.getName(), i.getHtmlUrl(), loadReadme(auth, github, i)))
-                    .forEach(example -> {
-                        final Collection<String> split = Stream.of(example.getName()
-                                .replace("application-composer", "applicationcomposer")
-                                .replace("configproperty", "config")
-                                .replace("descriptors", "descriptor")
-                                .replace("ejbs", "ejb")
-                                .replace("env-entry", "enventry")
-                                .replace("events", "event")
-                                .replace("interceptors", "interceptor")
-                                .split("-"))
-                                .filter(s -> !EXCLUDED_KEYWORDS.contains(s))
-                                .filter(s -> {
-                                    try {
-                                        Integer.parseInt(s);
-                                        return false;
-                                    } catch (final NumberFormatException nfe) {
-                                        return true;
-                                    }
-                                })
-                                .collect(toList());
-                        if (split.isEmpty()) {
-                            CACHE.computeIfAbsent("Unclassified", k -> new ArrayList<>()).add(example);
-                        } else {
-                            for (final String keyword : split) {
-                                CACHE.computeIfAbsent(keyword, k -> new ArrayList<>()).add(example);
-                            }
+                    .map(i -> {
+                        final Example known = previous.get(i.getName());
+                        if (known != null && i.getSha() != null && i.getSha().equals(known.getSha())) { // folder unchanged
+                            return known;
                         }
-                    });
+                        fetched.incrementAndGet();
+                        return loadExample(auth, github, i, known);
+                    })
+                    .collect(toList());
+            CACHE.clear();
+            CACHE.putAll(index(examples));
 
             // debug stats
-            final int totalExamples = CACHE.size();
-            final long exampleMissingReadme = CACHE.values().stream().flatMap(Collection::stream).filter(e -> DEFAULT_README.equals(e.getReadme())).count();
-            System.out.println(exampleMissingReadme + "/" + totalExamples + " miss a README.md");
-            CACHE.values().stream().flatMap(Collection::stream).filter(e -> DEFAULT_README.equals(e.getReadme())).forEach(e -> System.out.println("  - " + e.getName()));
+            final List<Example> missingReadme = examples.stream().filter(e -> DEFAULT_README.equals(e.getReadme())).collect(toList());
+            System.out.println(missingReadme.size() + "/" + examples.size() + " miss a README.md");
+            missingReadme.forEach(e -> System.out.println("  - " + e.getName()));
+            System.out.println(fetched.get() + " README.md requested");
 
-            try (final OutputStream os = new FileOutputStream(CACHE_FILE)) {
-                new MapperBuilder().setPretty(true).build().writeObject(loadAll(), os);
+            try {
+                saveCache(cache);
             } catch (final IOException e) {
                 throw new IllegalArgumentException(e);
             }
@@ -153,140 +236,196 @@ public class Examples {
         }
     }
 
-    private static String loadReadme(final String auth, final WebTarget github, final GithubContentItem i) {
-        try {
-            final Invocation.Builder request = github.path("repos/apache/tomee/contents/examples/{name}/README.md")
-                    .resolveTemplate("name", i.getName()).request(APPLICATION_JSON_TYPE);
-            if (auth != null) {
-                request.header("Authorization", auth);
+    // keyword -> examples, built in parallel without shared mutable state (each thread groups its part then they are merged)
+    // and deterministic: sorted keywords and examples in the order of the input
+    static Map<String, List<Example>> index(final List<Example> examples) {
+        return examples.parallelStream()
+                .flatMap(e -> keywords(e.getName()).map(k -> new AbstractMap.SimpleImmutableEntry<>(k, e)))
+                .collect(groupingBy(Map.Entry::getKey, TreeMap::new, mapping(Map.Entry::getValue, toList())));
+    }
+
+    static Stream<String> keywords(final String name) {
+        String normalized = name;
+        for (final String[] replacement : KEYWORD_REPLACEMENTS) {
+            normalized = normalized.replace(replacement[0], replacement[1]);
+        }
+        final List<String> keywords = Stream.of(normalized.split("-"))
+                .filter(s -> !s.isEmpty() && !EXCLUDED_KEYWORDS.contains(s) && !isNumber(s))
+                .distinct()
+                .collect(toList());
+        return keywords.isEmpty() ? Stream.of("Unclassified") : keywords.stream();
+    }
+
+    private static boolean isNumber(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
             }
-            return ofNullable(request
-                    .get(GithubContentItem.class)
-                    .getContent())
-                    .map(c -> new String(decodeBase64(c), StandardCharsets.UTF_8))
-                    .orElse(DEFAULT_README);
-        } catch (final NotFoundException wae) {
-            System.err.println(wae.getMessage() + " for the README.md of " + i.getName());
-            return DEFAULT_README;
-        } catch (final ForbiddenException wae) {
-            System.err.println("Can't retrieve examples, set -Dgithub.auth=.... to get a higher rate limit");
-            return DEFAULT_README;
         }
+        return true;
     }
 
-    private static String findTitle(final String name, final String readme) {
-        try (final BufferedReader reader = new BufferedReader(new StringReader(readme))) {
+    // cache layout: "EXAMPLES-CACHE <version> <index size>" line, the index (one line per example with the position of
+    // its README in the blob region then one line per tag with the indexes of its examples) and the README blobs.
+    // Examples are stored once whatever the number of tags and READMEs are only decoded (from a mapped file) when used.
+    private static void readCache(final File cache) throws IOException {
+        final ByteBuffer content;
+        try (final FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+            content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // stays valid after close
+        }
+
+        if (content.limit() > 0 && content.get(0) == '{') { // previous format (plain json), migrate it
+            try (final InputStream is = new FileInputStream(cache)) {
+                final LegacyExampleWrapper wrapper = new MapperBuilder().build().readObject(is, LegacyExampleWrapper.class);
+                final Map<String, Example> examples = new HashMap<>();
+                wrapper.getAll().forEach((tag, list) -> CACHE.put(tag, list.stream()
+                        .map(e -> examples.computeIfAbsent(e.getName(), n -> new Example(n, e.getUrl(), null, null, e::getReadme)))
+                        .collect(toList())));
+            }
+            saveCache(cache);
+            return;
+        }
+
+        // the declared sizes and positions are checked against the file before use, a truncated or corrupted
+        // cache is rejected (then reloaded) instead of decoding random bytes or failing later in a template
+        final int limit = content.limit();
+        int headerEnd = 0;
+        while (headerEnd < limit && content.get(headerEnd) != '\n') {
+            headerEnd++;
+        }
+        if (headerEnd == limit) {
+            throw new IllegalArgumentException("no header in " + cache);
+        }
+        final String[] header = decode(content, 0, headerEnd).split(" ");
+        if (header.length != 3 || !CACHE_MAGIC.equals(header[0]) || !CACHE_VERSION.equals(header[1])) {
+            throw new IllegalArgumentException("unsupported " + cache + " format");
+        }
+        final int indexStart = headerEnd + 1;
+        final int blobsStart = indexStart + checkRange(Integer.parseInt(header[2]), limit - indexStart, "index size");
+
+        final List<Example> examples = new ArrayList<>();
+        try (final BufferedReader reader = new BufferedReader(new StringReader(decode(content, indexStart, blobsStart)))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                if (line.startsWith("Title: ")) {
-                    return line.substring("Title: ".length());
+                final String[] parts = line.split("\t");
+                if ("catalogue".equals(parts[0]) && parts.length == 2) {
+                    catalogueEtag = fromIndex(parts[1]);
+                } else if ("example".equals(parts[0]) && parts.length == 7) {
+                    final int offset = blobsStart + checkRange(Integer.parseInt(parts[5]), limit - blobsStart, "README offset");
+                    final int length = checkRange(Integer.parseInt(parts[6]), limit - offset, "README length");
+                    examples.add(new Example(parts[1], parts[2], fromIndex(parts[3]), fromIndex(parts[4]), () -> decode(content, offset, offset + length)));
+                } else if ("tag".equals(parts[0]) && parts.length == 3) {
+                    CACHE.put(parts[1], Stream.of(parts[2].split(","))
+                            .map(i -> examples.get(checkRange(Integer.parseInt(i), examples.size() - 1, "example index")))
+                            .collect(toList()));
+                } else {
+                    throw new IllegalArgumentException("unexpected index line '" + line + "'");
                 }
             }
-        } catch (final IOException e) {
-            throw new IllegalStateException(e);
         }
-        return name;
     }
 
-    // quick cleanup of markdown syntax to adoc one used there
-    private static String mdToAdoc(final String s) {
-        final Pattern link = Pattern.compile("(.*)\\[([^\\]]*)\\]\\(([^\\)]*)\\)(.*)");
+    // the cache file is replaced (not rewritten in place) since the current examples can still read the old mapping,
+    // then it is read again to not keep the READMEs in memory
+    private static void saveCache(final File cache) throws IOException {
+        final Map<Example, Integer> indexes = new LinkedHashMap<>();
+        final StringBuilder index = new StringBuilder();
+        final ByteArrayOutputStream blobs = new ByteArrayOutputStream();
+        index.append("catalogue\t").append(toIndex(catalogueEtag)).append('\n');
+        CACHE.values().stream().flatMap(Collection::stream).forEach(e -> indexes.computeIfAbsent(e, k -> {
+            final byte[] readme = k.getReadme().getBytes(StandardCharsets.UTF_8);
+            index.append("example\t").append(k.getName()).append('\t').append(k.getUrl())
+                    .append('\t').append(toIndex(k.getSha())).append('\t').append(toIndex(k.getReadmeEtag()))
+                    .append('\t').append(blobs.size()).append('\t').append(readme.length).append('\n');
+            blobs.write(readme, 0, readme.length);
+            return indexes.size();
+        }));
+        CACHE.forEach((tag, examples) -> index.append("tag\t").append(tag).append('\t')
+                .append(examples.stream().map(e -> String.valueOf(indexes.get(e))).collect(joining(","))).append('\n'));
 
-        try (final StringWriter writer = new StringWriter();
-             final BufferedReader reader = new BufferedReader(new StringReader(s))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("Title: ")) {
-                    continue;
-                }
-                if (line.startsWith("#")) {
-                    for (int i = 0; i < line.length(); i++) {
-                        if (line.charAt(i) == '#') {
-                            writer.append('=');
-                        } else {
-                            writer.append(" ").append(line.substring(i));
-                            break;
-                        }
-                    }
-                } else if (line.startsWith("    package") || line.startsWith("    import") || line.startsWith("    public ") || line.startsWith("    @")) { // java code
-                    writer.append("\n[source,java]\n----\n");
-                    writer.append(line.replaceFirst("    ", "")).append('\n');
-                    while ((line = reader.readLine()) != null) {
-                        writer.append(line.replaceFirst("    ", "")).append('\n');
-                        if ("    }".equals(line)) {
-                            writer.append("----\n");
-                            break;
-                        }
-                    }
-                } else if (line.startsWith("    <")) { // xml code
-                    writer.append("\n[source,xml]\n----\n");
-                    if (line.startsWith("    <?")) { // prolog
-                        writer.append(line.replaceFirst("    ", "")).append('\n');
-                        line = reader.readLine();
-                    }
-                    while (line != null && line.trim().isEmpty()) {
-                        line = reader.readLine();
-                    }
-                    if (line.trim().startsWith("<!--")) {
-                        if (line.contains("-->")) {
-                            writer.append(line.replaceFirst("    ", "")).append('\n');
-                        } else {
-                            do {
-                                writer.append(line.replaceFirst("    ", "")).append('\n');
-                            } while ((line = reader.readLine()) != null && !line.trim().equals("-->"));
-                            writer.append(line.replaceFirst("    ", "")).append('\n');
-                        }
-                        line = reader.readLine();
-                        while (line != null && line.trim().isEmpty()) {
-                            line = reader.readLine();
-                        }
-                    }
+        final byte[] indexBytes = index.toString().getBytes(StandardCharsets.UTF_8);
+        final File tmp = new File(cache.getAbsoluteFile().getParentFile(), cache.getName() + ".tmp");
+        try (final OutputStream os = new FileOutputStream(tmp)) {
+            os.write((CACHE_MAGIC + ' ' + CACHE_VERSION + ' ' + indexBytes.length + '\n').getBytes(StandardCharsets.UTF_8));
+            os.write(indexBytes);
+            blobs.writeTo(os);
+        }
+        Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
 
-                    if (line.trim().endsWith("/>")) {
-                        writer.append(line.replaceFirst("    ", "")).append('\n');
-                        writer.append("----\n");
-                    } else {
-                        final int space = line.indexOf(' ', 5);
-                        final String end = "</" + line.substring(5, space < 0 ? line.indexOf('>') : space) + ">";
-                        writer.append(line.replaceFirst("    ", "")).append('\n');
-                        while ((line = reader.readLine()) != null) {
-                            writer.append(line.replaceFirst("    ", "")).append('\n');
-                            if (end.equals(line.trim())) {
-                                writer.append("----\n");
-                                break;
-                            }
-                        }
-                    }
-                } else if (line.startsWith("    -------------------------------------------------------")) { // run output
-                    writer.append("\n[source]\n----\n");
-                    writer.append(line.replaceFirst("    ", "")).append('\n');
-                    while ((line = reader.readLine()) != null) {
-                        writer.append(line.replaceFirst("    ", "")).append('\n');
-                        if (line.startsWith("    Tests run:") && !line.contains("Time elapsed:")) {
-                            writer.append("----\n");
-                            break;
-                        }
+        CACHE.clear();
+        readCache(cache);
+    }
+
+    private static String toIndex(final String value) {
+        return value == null ? "-" : value;
+    }
+
+    private static String fromIndex(final String value) {
+        return "-".equals(value) ? null : value;
+    }
+
+    private static int checkRange(final int value, final int max, final String what) {
+        if (value < 0 || value > max) {
+            throw new IllegalArgumentException(what + " " + value + " out of [0, " + max + "]");
+        }
+        return value;
+    }
+
+    private static String decode(final ByteBuffer content, final int start, final int end) {
+        final ByteBuffer slice = content.duplicate();
+        slice.limit(end).position(start);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    private static Example loadExample(final String auth, final WebTarget github, final GithubContentItem i, final Example known) {
+        final Invocation.Builder request = github.path("repos/apache/tomee/contents/examples/{name}/README.md")
+                .resolveTemplate("name", i.getName()).request(APPLICATION_JSON_TYPE);
+        if (auth != null) {
+            request.header("Authorization", auth);
+        }
+        if (known != null && known.getReadmeEtag() != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, known.getReadmeEtag());
+        }
+
+        final Response response = request.get();
+        try {
+            switch (response.getStatus()) {
+                case HttpURLConnection.HTTP_OK:
+                    final String readme = ofNullable(response.readEntity(GithubContentItem.class).getContent())
+                            .map(c -> new String(decodeBase64(c), StandardCharsets.UTF_8))
+                            .orElse(DEFAULT_README);
+                    return new Example(i.getName(), i.getHtmlUrl(), i.getSha(), response.getHeaderString(HttpHeaders.ETAG), () -> readme);
+                case HttpURLConnection.HTTP_NOT_MODIFIED:
+                    return new Example(i.getName(), i.getHtmlUrl(), i.getSha(), known.getReadmeEtag(), known::getReadme);
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    System.err.println("HTTP 404 Not Found for the README.md of " + i.getName());
+                    return new Example(i.getName(), i.getHtmlUrl(), i.getSha(), null, () -> DEFAULT_README);
+                default:
+                    if (response.getStatus() == HttpURLConnection.HTTP_FORBIDDEN) {
+                        System.err.println("Can't retrieve examples, set -Dgithub.auth=.... to get a higher rate limit");
                     }
-                } else if (line.startsWith(">")) {
-                    writer.append("\nNOTE: ").append(line.substring(1)).append("\n");
-                } else {
-                    final Matcher matcher = link.matcher(line);
-                    if (matcher.matches()) {
-                        String l = matcher.group(3);
-                        if (l.startsWith("../") && l.endsWith("README.html")) { // hack for old relative links
-                            l = l.substring("../".length(), l.length() - "/README.html".length()) + ".html";
-                        }
-                        writer.append(matcher.group(1)).append("link:").append(l).append('[').append(matcher.group(2)).append(']').append(matcher.group(4));
-                    } else {
-                        writer.append(line);
+                    if (known != null) { // no sha to request it again next time
+                        return new Example(i.getName(), i.getHtmlUrl(), null, known.getReadmeEtag(), known::getReadme);
                     }
+                    return new Example(i.getName(), i.getHtmlUrl(), null, null, () -> DEFAULT_README);
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    private static String findTitle(final String name, final String readme) {
+        try (final BufferedReader reader = new BufferedReader(new StringReader(readme))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Title: ")) {
+                    return line.substring("Title: ".length());
                 }
-                writer.append('\n');
             }
-            return writer.toString();
         } catch (final IOException e) {
             throw new IllegalStateException(e);
         }
+        return name;
     }
 
     public static void main(final String[] args) {
@@ -300,10 +439,32 @@ public class Examples {
     }
 
     @Data
+    @ToString(exclude = "readme")
+    @EqualsAndHashCode(exclude = "readme")
     public static class Example {
         private final String name;
         private final String url;
-        private final String readme;
+        private final String sha; // of the example folder
+        private final String readmeEtag;
+
+        @Getter(NONE)
+        private final Supplier<String> readme;
+
+        public String getReadme() {
+            return readme.get();
+        }
+    }
+
+    @Data
+    public static class LegacyExampleWrapper {
+        private Map<String, Collection<LegacyExample>> all;
+    }
+
+    @Data
+    public static class LegacyExample {
+        private String name;
+        private String url;
+        private String readme;
     }
 
     @Data
@@ -311,6 +472,7 @@ public class Examples {
         private String name;
         private String path;
         private String type;
+        private String sha;
         private String content;
 
         @JohnzonProperty("html_url")
@@ -0,0 +1,560 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.jbake.app.Asset;
+import org.jbake.app.ContentStore;
+import org.jbake.app.Crawler;
+import org.jbake.app.DBUtil;
+import org.jbake.app.FileUtil;
+import org.jbake.app.Parser;
+import org.jbake.app.Renderer;
+import org.jbake.model.DocumentTypes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonMap;
+import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.joining;
+
+// same steps as org.jbake.app.Oven#bake() but the content store is not dropped between bakes
+// so only the documents which changed (sha1) are parsed and rendered again.
+// Note: the store is owned by the caller (see BuildSession) and must stay open between bakes.
+public class IncrementalOven {
+    private static final Pattern TEMPLATE_DOC_PATTERN = Pattern.compile("(?:template\\.)([a-zA-Z0-9]+)(?:\\.file)");
+    // model entries of GroovyTemplateEngine querying the content store (only usable from the thread owning it),
+    // <docType>s entries (pages, posts...) are added for each document type
+    private static final List<String> STORE_VARIABLES = Arrays.asList(
+            "db", "published_posts", "published_pages", "published_content", "all_content", "alltags", "tags", "tag_posts");
+    private static final Pattern INCLUDE = Pattern.compile("include\\s+[\"']([^\"']+)[\"']");
+
+    private final File source;
+    private final File destination;
+    private final CompositeConfiguration config;
+    private final File contentsPath;
+    private final File templatesPath;
+    private final File assetsPath;
+    private final ContentStore db;
+    private final Crawler crawler;
+    private final Parser parser;
+
+    public IncrementalOven(final File source, final File destination, final CompositeConfiguration config, final ContentStore db) {
+        this.source = source;
+        this.destination = destination;
+        this.config = config;
+        this.db = db;
+        this.contentsPath = new File(source, config.getString("content.folder"));
+        this.templatesPath = new File(source, config.getString("template.folder"));
+        this.assetsPath = new File(source, config.getString("asset.folder"));
+        this.crawler = new Crawler(db, source, config);
+        this.parser = new Parser(config, source.getPath() + File.separator + config.getString("content.folder"));
+    }
+
+    public int bake(final Collection<Path> changes) {
+        return bake(changes, () -> false);
+    }
+
+    /**
+     * @param changes the updated/created/deleted source files or null to force a full bake.
+     * @param cancelled checked between documents, when it becomes true the bake stops with a CancellationException.
+     *                  Documents crawled but not rendered yet stay marked as unrendered so the next bake picks them.
+     * @return the number of rendered documents.
+     */
+    public int bake(final Collection<Path> changes, final BooleanSupplier cancelled) {
+        return bake(changes, cancelled, () -> TemplateData.load(contentsPath).join());
+    }
+
+    /**
+     * @param templateData the models of the templates (see TemplateData), only awaited once the content is crawled.
+     */
+    public int bake(final Collection<Path> changes, final BooleanSupplier cancelled, final Supplier<?> templateData) {
+        if (!destination.isDirectory() && !destination.mkdirs()) {
+            throw new IllegalStateException("Can't create " + destination);
+        }
+
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        updateDocTypesFromConfiguration();
+        DBUtil.updateSchema(db);
+
+        boolean full = clearCacheIfNeeded(changes == null);
+        if (full || changes.stream().anyMatch(p -> p.startsWith(assetsPath.toPath()))) {
+            try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "bake/bundles")) {
+                if (bundleAssets(errors) && !full) {
+                    full = clearCacheIfNeeded(true); // all pages reference the bundles
+                }
+            }
+        }
+
+        try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "bake/crawl")) {
+            final Map<String, Collection<ODocument>> crawled = findCrawledDocuments();
+            final boolean deleted = !full && removeDeletedContent(crawled);
+            if (crawl(contentsPath, crawled, cancelled) || deleted) {
+                markAggregatingDocumentsAsUnrendered();
+            }
+        }
+
+        try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "bake/template data")) {
+            final Object data = templateData.get();
+            if (data != null) {
+                config.setProperty("data", data); // ${config.data} in the templates
+            }
+        } catch (final RuntimeException e) {
+            errors.add(e.getMessage());
+        }
+
+        final Renderer renderer = TemplateCache.install(new Renderer(db, destination, templatesPath, config), templatesPath);
+        final int rendered;
+        try (final BuildReport.Probe stage = BuildReport.probe(BuildReport.STAGE, "bake/render")) {
+            rendered = render(renderer, errors, cancelled);
+        }
+
+        checkCancelled(cancelled);
+        if (full || rendered > 0) { // these pages aggregate the content so only refresh them when needed
+            try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "bake/aggregates")) {
+                if (config.getBoolean("render.index")) {
+                    renderer.renderIndex(config.getString("index.file"));
+                }
+                if (config.getBoolean("render.feed")) {
+                    renderer.renderFeed(config.getString("feed.file"));
+                }
+                if (config.getBoolean("render.sitemap")) {
+                    renderer.renderSitemap(config.getString("sitemap.file"));
+                }
+                if (config.getBoolean("render.archive")) {
+                    renderer.renderArchive(config.getString("archive.file"));
+                }
+                if (config.getBoolean("render.tags")) {
+                    renderer.renderTags(crawler.getTags(), config.getString("tag.path"));
+                }
+            } catch (final Exception e) {
+                errors.add(e.getMessage());
+            }
+        }
+
+        for (final String docType : DocumentTypes.getDocumentTypes()) {
+            db.markConentAsRendered(docType);
+        }
+
+        try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "bake/assets")) {
+            if (full) {
+                final Asset asset = new Asset(source, destination, config);
+                asset.copy(assetsPath);
+                errors.addAll(asset.getErrors());
+            } else {
+                copyChangedAssets(changes, errors);
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            System.err.println("Failed to bake " + errors.size() + " item(s):");
+            errors.forEach(e -> System.err.println("  - " + e));
+        }
+        return rendered;
+    }
+
+    // org.jbake.app.Crawler#crawl() doesn't store the sourceuri (jbake 2.4.0) so it never finds
+    // already crawled documents, this is the same logic with the sourceuri to be able to skip unchanged files.
+    // Returns true if a file was (re)crawled.
+    private boolean crawl(final File folder, final Map<String, Collection<ODocument>> crawled, final BooleanSupplier cancelled) {
+        final File[] files = folder.listFiles(FileUtil.getFileFilter());
+        if (files == null) {
+            return false;
+        }
+
+        Arrays.sort(files);
+        boolean changed = false;
+        for (final File file : files) {
+            checkCancelled(cancelled);
+            if (file.isDirectory()) {
+                changed |= crawl(file, crawled, cancelled);
+                continue;
+            }
+            if (!file.isFile()) {
+                continue;
+            }
+
+            final String sha1;
+            try {
+                sha1 = FileUtil.sha1(file);
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+            final String uri = FileUtil.asPath(contentsPath.toPath().relativize(file.toPath()).toString());
+
+            boolean identical = false;
+            for (final ODocument document : crawled.getOrDefault(uri, emptyList())) {
+                if (sha1.equals(document.field("sha1")) && Boolean.TRUE.equals(document.field("rendered"))) {
+                    identical = true;
+                } else {
+                    db.deleteContent(document.getClassName(), uri);
+                }
+            }
+            if (!identical) {
+                crawlSourceFile(file, sha1, uri);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // the templates using the store (blog.gsp lists the posts for instance) must be rendered again when the content changes
+    private void markAggregatingDocumentsAsUnrendered() {
+        final Set<String> storeTemplates = findTemplatesUsingTheStore();
+        if (storeTemplates.isEmpty()) {
+            return;
+        }
+        for (final String docType : DocumentTypes.getDocumentTypes()) {
+            if (!storeTemplates.contains(templateOf(singletonMap("type", docType)))) {
+                continue;
+            }
+            for (final ODocument document : db.getAllContent(docType)) {
+                if (Boolean.TRUE.equals(document.field("rendered"))) {
+                    document.field("rendered", false);
+                    document.save();
+                }
+            }
+        }
+    }
+
+    // ContentStore#getDocumentStatus() scans the whole class for each file so load all the statuses at once
+    private Map<String, Collection<ODocument>> findCrawledDocuments() {
+        final Map<String, Collection<ODocument>> crawled = new HashMap<>();
+        for (final String docType : DocumentTypes.getDocumentTypes()) {
+            for (final ODocument document : db.getAllContent(docType)) {
+                final String uri = document.field("sourceuri");
+                if (uri != null) {
+                    crawled.computeIfAbsent(uri, k -> new ArrayList<>()).add(document);
+                }
+            }
+        }
+        return crawled;
+    }
+
+    private void crawlSourceFile(final File file, final String sha1, final String uri) {
+        final Map<String, Object> fileContents = parser.processFile(file);
+        if (fileContents == null) {
+            System.err.println(file + " has an invalid header, it has been ignored!");
+            return;
+        }
+
+        final String docType = String.valueOf(fileContents.get("type"));
+        fileContents.put("rootpath", crawler.getPathToRoot(file));
+        fileContents.put("sha1", sha1);
+        fileContents.put("rendered", false);
+        fileContents.put("file", file.getPath());
+        fileContents.put("sourceuri", uri);
+        fileContents.put("uri", uri.substring(0, uri.lastIndexOf('.')) + FileUtil.findExtension(config, docType));
+        if ("published-date".equals(fileContents.get("status"))
+                && Date.class.isInstance(fileContents.get("date")) && new Date().after(Date.class.cast(fileContents.get("date")))) {
+            fileContents.put("status", "published");
+        }
+
+        final ODocument document = new ODocument(docType);
+        document.fields(fileContents);
+        document.field("cached", ofNullable(fileContents.get("cached")).map(c -> Boolean.valueOf(String.valueOf(c))).orElse(true));
+        document.save();
+    }
+
+    private boolean clearCacheIfNeeded(final boolean force) {
+        String currentTemplatesSignature;
+        try {
+            currentTemplatesSignature = FileUtil.sha1(templatesPath);
+        } catch (final Exception e) {
+            currentTemplatesSignature = "";
+        }
+
+        final List<ODocument> signatures = db.getSignaturesForTemplates();
+        boolean clear = force;
+        if (signatures.isEmpty()) {
+            db.insertSignature(currentTemplatesSignature);
+            clear = true;
+        } else if (!currentTemplatesSignature.equals(signatures.get(0).field("sha1"))) {
+            db.updateSignatures(currentTemplatesSignature);
+            clear = true;
+        }
+
+        if (clear) { // templates changed (or first bake) so all documents need to be rendered again
+            for (final String docType : DocumentTypes.getDocumentTypes()) {
+                db.deleteAllByDocType(docType);
+            }
+            DBUtil.updateSchema(db);
+        }
+        return clear;
+    }
+
+    // the crawler only sees existing files so drop the deleted ones from the store and the output. The crawled documents
+    // are swept (and not only the changed paths) since a deleted folder is a single change for all the files it contained.
+    // Returns true if a document was removed.
+    private boolean removeDeletedContent(final Map<String, Collection<ODocument>> crawled) {
+        boolean removed = false;
+        for (final Iterator<Map.Entry<String, Collection<ODocument>>> it = crawled.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<String, Collection<ODocument>> entry = it.next();
+            if (new File(contentsPath, entry.getKey()).exists()) {
+                continue;
+            }
+
+            for (final ODocument document : entry.getValue()) {
+                db.deleteContent(document.getClassName(), entry.getKey());
+
+                final String uri = document.field("uri");
+                final File output = uri == null ? null : new File(destination, uri);
+                if (output != null && output.isFile() && !output.delete()) {
+                    System.err.println("Can't delete " + output);
+                }
+            }
+            it.remove();
+            removed = true;
+        }
+        return removed;
+    }
+
+    // documents are rendered by -Djbake.render.threads workers (cores by default), each one with its own renderer.
+    // Orient binds the store to the thread which opened it so the documents of the templates using it (blog...)
+    // stay on this thread. Each document is written in its own file so the output doesn't depend on the order.
+    private int render(final Renderer renderer, final Collection<String> errors, final BooleanSupplier cancelled) {
+        final Set<String> storeTemplates = findTemplatesUsingTheStore();
+        final Queue<Map<String, Object>> parallel = new ConcurrentLinkedQueue<>();
+        final List<Map<String, Object>> local = new ArrayList<>();
+        for (final String docType : DocumentTypes.getDocumentTypes()) {
+            for (final ODocument document : db.getUnrenderedContent(docType)) {
+                final Map<String, Object> model = DBUtil.documentToModel(document);
+                (storeTemplates.contains(templateOf(model)) ? local : parallel).add(model);
+            }
+        }
+
+        final AtomicInteger rendered = new AtomicInteger();
+        final int threads = Math.min(parallel.size(), Integer.getInteger("jbake.render.threads", Runtime.getRuntime().availableProcessors()));
+        if (threads <= 1) {
+            local.addAll(parallel);
+            parallel.clear();
+        }
+
+        if (threads > 1) { // compile each template once (in the shared cache) before the workers race on it
+            final Set<String> templates = new HashSet<>();
+            for (final Iterator<Map<String, Object>> it = parallel.iterator(); it.hasNext(); ) {
+                final Map<String, Object> model = it.next();
+                if (templates.add(templateOf(model))) {
+                    it.remove();
+                    checkCancelled(cancelled);
+                    render(renderer, model, errors, rendered);
+                }
+            }
+        }
+
+        final ExecutorService pool = threads <= 1 ? null : Executors.newFixedThreadPool(threads, new ThreadFactory());
+        final Collection<Future<?>> workers = new ArrayList<>(Math.max(0, threads));
+        try {
+            for (int i = 0; pool != null && i < threads; i++) {
+                workers.add(pool.submit(() -> {
+                    final Renderer own = TemplateCache.install(new Renderer(db, destination, templatesPath, config), templatesPath);
+                    Map<String, Object> model;
+                    while ((model = parallel.poll()) != null) {
+                        checkCancelled(cancelled);
+                        render(own, model, errors, rendered);
+                    }
+                }));
+            }
+            for (final Map<String, Object> model : local) {
+                checkCancelled(cancelled);
+                render(renderer, model, errors, rendered);
+            }
+            for (final Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (final ExecutionException e) {
+            if (RuntimeException.class.isInstance(e.getCause())) {
+                throw RuntimeException.class.cast(e.getCause());
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally { // on failure/cancellation the workers stop after their current document
+            parallel.clear();
+            workers.forEach(worker -> worker.cancel(false));
+            if (pool != null) {
+                pool.shutdown();
+                awaitTermination(pool); // no worker must still write in the destination when the next bake starts
+            }
+        }
+        return rendered.get();
+    }
+
+    private static void awaitTermination(final ExecutorService pool) {
+        boolean interrupted = false;
+        while (!pool.isTerminated()) {
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void render(final Renderer renderer, final Map<String, Object> model, final Collection<String> errors, final AtomicInteger rendered) {
+        try (final BuildReport.Probe probe = BuildReport.probe("document", String.valueOf(model.get("uri")), templateOf(model))) {
+            renderer.render(model);
+            rendered.incrementAndGet();
+        } catch (final Exception e) {
+            errors.add(e.getMessage());
+        }
+    }
+
+    // the document templates which use (directly or through an include) a content store variable
+    private Set<String> findTemplatesUsingTheStore() {
+        final Collection<String> variables = new ArrayList<>(STORE_VARIABLES);
+        for (final String docType : DocumentTypes.getDocumentTypes()) {
+            variables.add(docType + 's');
+        }
+        final Pattern storeVariables = Pattern.compile("(?<![\\w.])(?:" + variables.stream()
+                .map(Pattern::quote)
+                .collect(joining("|")) + ")\\b");
+
+        final Set<String> templates = new HashSet<>();
+        final Iterator<String> keys = config.getKeys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            if (TEMPLATE_DOC_PATTERN.matcher(key).matches()) {
+                final String template = config.getString(key);
+                if (usesTheStore(template, storeVariables, new HashSet<>())) {
+                    templates.add(template);
+                }
+            }
+        }
+        return templates;
+    }
+
+    private boolean usesTheStore(final String template, final Pattern storeVariables, final Set<String> visited) {
+        if (!visited.add(template)) {
+            return false;
+        }
+
+        final String content;
+        try {
+            content = new String(Files.readAllBytes(new File(templatesPath, template).toPath()), config.getString("template.encoding", "UTF-8"));
+        } catch (final IOException e) {
+            return true; // unknown so keep it safe
+        }
+        if (storeVariables.matcher(content).find()) {
+            return true;
+        }
+        final Matcher includes = INCLUDE.matcher(content);
+        while (includes.find()) {
+            if (usesTheStore(includes.group(1), storeVariables, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String templateOf(final Map<String, Object> model) {
+        return config.getString("template." + model.get("type") + ".file", String.valueOf(model.get("type")));
+    }
+
+    private boolean bundleAssets(final Collection<String> errors) {
+        try {
+            return new AssetBundler(assetsPath, destination, config).bundle();
+        } catch (final IOException e) {
+            errors.add(e.getMessage());
+            return false;
+        }
+    }
+
+    private void copyChangedAssets(final Collection<Path> changes, final Collection<String> errors) {
+        final Path assets = assetsPath.toPath();
+        final Path target = destination.toPath();
+        for (final Path changed : changes) {
+            if (!changed.startsWith(assets)) {
+                continue;
+            }
+
+            final Path output = target.resolve(assets.relativize(changed).toString());
+            try {
+                if (Files.isRegularFile(changed)) {
+                    Files.createDirectories(output.getParent());
+                    Files.copy(changed, output, REPLACE_EXISTING);
+                } else if (!Files.exists(changed)) {
+                    Files.deleteIfExists(output);
+                }
+            } catch (final IOException e) {
+                errors.add(e.getMessage());
+            }
+        }
+    }
+
+    private static class ThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r);
+            thread.setName("jbake-render-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static void checkCancelled(final BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Bake cancelled");
+        }
+    }
+
+    private void updateDocTypesFromConfiguration() {
+        final Iterator<String> keys = config.getKeys();
+        while (keys.hasNext()) {
+            final Matcher matcher = TEMPLATE_DOC_PATTERN.matcher(keys.next());
+            if (matcher.find()) {
+                DocumentTypes.addDocumentType(matcher.group(1));
+            }
+        }
+    }
+}
@@ -1,29 +1,20 @@
 package org.apache.tomee.website;
 
-import com.orientechnologies.orient.core.Orient;
 import lombok.RequiredArgsConstructor;
-import org.apache.commons.configuration.CompositeConfiguration;
 import org.apache.tomee.embedded.Configuration;
 import org.apache.tomee.embedded.Container;
-import org.jbake.app.ConfigUtil;
-import org.jbake.app.Oven;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Path;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Scanner;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
-import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import static lombok.AccessLevel.PRIVATE;
 
 @RequiredArgsConstructor(access = PRIVATE)
@@ -59,40 +50,105 @@ public class JBake {
         final boolean startHttp = args == null || args.length < 2 || Boolean.parseBoolean(args[2]); // by default we dev
         final boolean skipPdf = args == null || args.length < 3 || Boolean.parseBoolean(args[3]); // by default...too slow sorry
 
-        final Runnable build = () -> {
-            System.out.println("Building TomEE website in " + destination);
-            final Orient orient = Orient.instance();
+        // reference for the manually enriched pages, opt-in (-Djbake.servicejar=true) since the site doesn't use it.
+        // Not in the sources: nothing includes the fragments.
+        final boolean serviceJar = Boolean.getBoolean("jbake.servicejar");
+        final File serviceJarOutput = new File(destination.getAbsoluteFile().getParentFile(), "service-jar");
+        // .gz siblings are only useful to serve the site, by default only done for the preview server
+        final PrecompressedResources precompressed = Boolean.parseBoolean(System.getProperty("jbake.precompress", Boolean.toString(startHttp))) ?
+                new PrecompressedResources(destination) : null;
+        final ResponsiveImages images = Boolean.parseBoolean(System.getProperty("jbake.images", "true")) ?
+                new ResponsiveImages(new File(source, "assets/img"), new File(destination, "img"), destination) : null;
+        final BuildSession session = new BuildSession(source, destination);
+        final Path contributorsSource = new File(source, "content/" + TemplateData.CONTRIBUTORS).toPath();
+        final AtomicReference<CompletableFuture<TemplateData>> templateData = new AtomicReference<>();
+        final Consumer<Collection<Path>> build = changes -> {
+            final boolean incremental = changes != null;
+            System.out.println("Building TomEE website in " + destination + (incremental ? " (incremental)" : ""));
+            final BuildReport report = BuildReport.start(incremental);
+            boolean completed = false;
             try {
-                orient.startup();
+                if (!incremental || changes.contains(contributorsSource)) { // loads while the bake starts
+                    templateData.set(TemplateData.load(new File(source, "content")));
+                }
 
-                final Oven oven = new Oven(source, destination, new CompositeConfiguration() {{
-                    addConfiguration(ConfigUtil.load(source));
-                }}, true);
-                oven.setupPaths();
+                if (serviceJar && !incremental) { // the TomEE version can't change during a session
+                    System.out.println("  > generating service-jar reference");
+                    try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "service-jar")) {
+                        final int fragments = ServiceJarHelper.generate(serviceJarOutput);
+                        System.out.println("  > updated " + fragments + " service-jar fragment(s) in " + serviceJarOutput
+                                + ", check them against the (manually enriched) admin/configuration pages");
+                    } catch (final Exception | LinkageError e) { // JAXB is not in the JDK since java 11, never break the site
+                        System.err.println("  > can't generate the service-jar reference, skipping it: " + e);
+                    }
+                }
 
                 System.out.println("  > baking");
-                oven.bake();
+                final long bakeStart = System.currentTimeMillis();
+                try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "bake")) {
+                    final long compilations = TemplateCache.compilations();
+                    final int rendered = session.bake(changes, templateData.get()::join);
+                    System.out.println("  > rendered " + rendered + " document(s), compiled "
+                            + (TemplateCache.compilations() - compilations) + " template(s)");
+                }
 
                 if (!skipPdf) {
                     System.out.println("  > pdfifying");
-                    PDFify.generatePdf(pdfSource, destination);
+                    try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "pdf")) {
+                        // incremental builds too: the cache finds the documents including a changed file
+                        PDFify.generatePdf(pdfSource, destination);
+                    }
+                }
+
+                if (images != null) {
+                    System.out.println("  > resizing images");
+                    try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "images")) {
+                        System.out.println("  > added srcset to " + images.update(bakeStart) + " page(s)");
+                    }
+                }
+
+                if (precompressed != null) {
+                    System.out.println("  > precompressing");
+                    try (final BuildReport.Probe probe = BuildReport.probe(BuildReport.STAGE, "precompress")) {
+                        System.out.println("  > compressed " + precompressed.update() + " file(s)");
+                    }
                 }
 
+                completed = true;
                 System.out.println("  > done :)");
+            } catch (final CancellationException ce) {
+                throw ce; // handled by the caller
             } catch (final Exception e) {
                 e.printStackTrace();
             } finally {
-                orient.shutdown();
+                report.finish(destination, completed);
             }
         };
 
-        build.run();
-        if (startHttp) {
-            final Path watched = source.toPath();
-            final WatchService watchService = watched.getFileSystem().newWatchService();
-            watched.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        build.accept(null);
+        if (!startHttp) {
+            session.close();
+        } else {
+            // changes arriving while a build runs cancel it: the renderer then rebuilds the union of both batches
+            final Object lock = new Object();
+            final Collection<Path> pending = new HashSet<>();
+            final AtomicBoolean pendingFull = new AtomicBoolean();
+            final AtomicBoolean building = new AtomicBoolean();
             final AtomicBoolean run = new AtomicBoolean(true);
-            final AtomicLong render = new AtomicLong(-1);
+            final Consumer<Collection<Path>> schedule = changes -> {
+                synchronized (lock) {
+                    if (changes == null) {
+                        pendingFull.set(true);
+                    } else {
+                        pending.addAll(changes);
+                    }
+                    lock.notifyAll();
+                }
+                if (building.get()) {
+                    session.cancel();
+                }
+            };
+
             final Thread renderingThread = new Thread() {
                 {
                     setName("jbake-renderer");
@@ -100,98 +156,79 @@ public class JBake {
 
                 @Override
                 public void run() {
-                    long last = System.currentTimeMillis();
                     while (run.get()) {
-                        if (render.get() > last) {
-                            last = System.currentTimeMillis();
-                            try {
-                                build.run();
-                            } catch (final Throwable oops) {
-                                oops.printStackTrace();
+                        final Collection<Path> changed;
+                        final boolean full;
+                        synchronized (lock) {
+                            while (run.get() && pending.isEmpty() && !pendingFull.get()) {
+                                try {
+                                    lock.wait();
+                                } catch (final InterruptedException e) {
+                                    Thread.interrupted();
+                                    return;
+                                }
                             }
+                            if (!run.get()) {
+                                return;
+                            }
+                            changed = new HashSet<>(pending);
+                            pending.clear();
+                            full = pendingFull.getAndSet(false);
+                            building.set(true);
                         }
-                        try {
-                            sleep(TimeUnit.SECONDS.toMillis(1));
-                        } catch (final InterruptedException e) {
-                            Thread.interrupted();
-                            break;
-                        }
-                    }
-                }
-            };
-            final Thread watcherThread = new Thread() {
-                {
-                    setName("jbake-file-watcher");
-                }
 
-                @Override
-                public void run() {
-                    while (run.get()) {
                         try {
-                            final WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
-                            if (key == null) {
-                                continue;
-                            }
-
-                            for (final WatchEvent<?> event : key.pollEvents()) {
-                                final WatchEvent.Kind<?> kind = event.kind();
-                                if (kind != ENTRY_CREATE && kind != ENTRY_DELETE && kind != ENTRY_MODIFY) {
-                                    continue; // unlikely but better to protect ourself
+                            build.accept(full ? null : changed);
+                        } catch (final CancellationException ce) {
+                            System.out.println("  > superseded by newer changes");
+                            synchronized (lock) { // rebuild with what the cancelled build didn't finish
+                                pending.addAll(changed);
+                                if (full) {
+                                    pendingFull.set(true);
                                 }
-
-                                final Path updatedPath = Path.class.cast(event.context());
-                                if (kind == ENTRY_DELETE || updatedPath.toFile().isFile()) {
-                                    final String path = updatedPath.toString();
-                                    if (!path.contains("___jb") && !path.endsWith("~")) {
-                                        render.set(System.currentTimeMillis());
-                                    }
-                                }
-                            }
-                            key.reset();
-                        } catch (final InterruptedException e) {
-                            Thread.interrupted();
-                            run.compareAndSet(true, false);
-                        } catch (final ClosedWatchServiceException cwse) {
-                            if (!run.get()) {
-                                throw new IllegalStateException(cwse);
                             }
+                        } catch (final Throwable oops) {
+                            oops.printStackTrace();
+                        } finally {
+                            building.set(false);
                         }
                     }
                 }
             };
-
             renderingThread.start();
-            watcherThread.start();
 
+            final SourceWatcher watcher = new SourceWatcher(source.toPath(), 200, schedule);
             final Runnable onQuit = () -> {
                 run.compareAndSet(true, false);
-                Stream.of(watcherThread, renderingThread).forEach(thread -> {
-                    try {
-                        thread.join();
-                    } catch (final InterruptedException e) {
-                        Thread.interrupted();
-                    }
-                });
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+                session.cancel();
+                watcher.close();
                 try {
-                    watchService.close();
-                } catch (final IOException ioe) {
-                    // not important
+                    renderingThread.join();
+                } catch (final InterruptedException e) {
+                    Thread.interrupted();
                 }
+                session.close();
             };
 
             try (final Container container = new Container(new Configuration() {{
                 setWebResourceCached(false);
                 property("openejb.additional.exclude", "logback,jbake");
             }}).deployClasspathAsWebApp(null, destination)) {
+                if (precompressed != null) {
+                    container.getTomcat().getHost().getPipeline().addValve(precompressed.valve());
+                }
                 System.out.println("Started on http://localhost:" + container.getConfiguration().getHttpPort());
 
                 final Scanner console = new Scanner(System.in);
                 String cmd;
                 while (((cmd = console.nextLine())) != null) {
                     if ("quit".equals(cmd)) {
-                        return;
+                        break;
                     } else if ("r".equals(cmd) || "rebuild".equals(cmd) || "build".equals(cmd) || "b".equals(cmd)) {
-                        render.set(System.currentTimeMillis());
+                        schedule.accept(null); // explicit request, don't rely on the detected changes
                     } else {
                         System.err.println("Ignoring " + cmd + ", please use 'build' or 'quit'");
                     }
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// quick cleanup of the markdown syntax used in the examples README.md to the asciidoc one.
+// Single pass on the lines, no regex: titles, indented java/xml/maven output blocks, fenced blocks,
+// nested lists, quotes (NOTE), inline code and links.
+public class MarkdownToAsciidoc {
+    private static final String INDENT = "    ";
+    private static final String RUN_OUTPUT = "    -------------------------------------------------------";
+
+    private final BufferedReader reader;
+    private final Writer writer;
+    private final Deque<Integer> listIndents = new ArrayDeque<>(); // indentation of the items of the current list levels
+
+    private MarkdownToAsciidoc(final Reader reader, final Writer writer) {
+        this.reader = BufferedReader.class.isInstance(reader) ? BufferedReader.class.cast(reader) : new BufferedReader(reader);
+        this.writer = writer;
+    }
+
+    public static String convert(final String markdown) {
+        final StringWriter writer = new StringWriter(markdown.length() + 256);
+        try {
+            convert(new StringReader(markdown), writer);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    public static void convert(final Reader markdown, final Writer asciidoc) throws IOException {
+        new MarkdownToAsciidoc(markdown, asciidoc).convert();
+    }
+
+    private void convert() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("Title: ")) {
+                continue;
+            }
+
+            if (line.startsWith("#")) {
+                title(line);
+            } else if (line.startsWith("    package") || line.startsWith("    import") || line.startsWith("    public ") || line.startsWith("    @")) {
+                javaBlock(line);
+            } else if (line.startsWith("    <")) {
+                xmlBlock(line);
+            } else if (line.startsWith(RUN_OUTPUT)) {
+                runOutputBlock(line);
+            } else if (line.startsWith("```") || line.startsWith("~~~")) {
+                fencedBlock(line);
+            } else if (line.startsWith(">")) {
+                writer.append("\nNOTE: ").append(line, 1, line.length()).append('\n');
+            } else if (!listItem(line)) {
+                inline(line, 0);
+            }
+            writer.append('\n');
+        }
+    }
+
+    private void title(final String line) throws IOException {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '#') {
+                writer.append('=');
+            } else {
+                writer.append(' ').append(line, i, line.length());
+                break;
+            }
+        }
+    }
+
+    private void javaBlock(final String first) throws IOException {
+        writer.append("\n[source,java]\n----\n");
+        unindent(first);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            unindent(line);
+            if ("    }".equals(line)) {
+                writer.append("----\n");
+                break;
+            }
+        }
+    }
+
+    private void xmlBlock(final String first) throws IOException {
+        writer.append("\n[source,xml]\n----\n");
+        String line = first;
+        if (line.startsWith("    <?")) { // prolog
+            unindent(line);
+            line = reader.readLine();
+        }
+        line = skipBlankLines(line);
+        if (line != null && line.trim().startsWith("<!--")) {
+            if (line.contains("-->")) {
+                unindent(line);
+            } else {
+                do {
+                    unindent(line);
+                } while ((line = reader.readLine()) != null && !line.trim().equals("-->"));
+                if (line != null) {
+                    unindent(line);
+                }
+            }
+            line = skipBlankLines(reader.readLine());
+        }
+        if (line == null) {
+            return;
+        }
+
+        if (line.trim().endsWith("/>")) {
+            unindent(line);
+            writer.append("----\n");
+            return;
+        }
+
+        final String end = closingTag(line);
+        unindent(line);
+        while ((line = reader.readLine()) != null) {
+            unindent(line);
+            if (line.trim().equals(end)) {
+                writer.append("----\n");
+                break;
+            }
+        }
+    }
+
+    private void runOutputBlock(final String first) throws IOException {
+        writer.append("\n[source]\n----\n");
+        unindent(first);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            unindent(line);
+            if (line.startsWith("    Tests run:") && !line.contains("Time elapsed:")) {
+                writer.append("----\n");
+                break;
+            }
+        }
+    }
+
+    private void fencedBlock(final String first) throws IOException {
+        final String fence = first.substring(0, 3);
+        final String language = first.substring(3).trim();
+        writer.append(language.isEmpty() ? "\n[source]\n----\n" : "\n[source," + language + "]\n----\n");
+        String line;
+        while ((line = reader.readLine()) != null && !line.trim().startsWith(fence)) {
+            writer.append(line).append('\n');
+        }
+        writer.append("----\n");
+    }
+
+    // top level items are kept as they are (same syntax), nested ones use the asciidoc depth marker
+    private boolean listItem(final String line) throws IOException {
+        int indent = 0;
+        while (indent < line.length() && line.charAt(indent) == ' ') {
+            indent++;
+        }
+        final boolean item = indent + 1 < line.length() && line.charAt(indent + 1) == ' '
+                && (line.charAt(indent) == '*' || line.charAt(indent) == '-' || line.charAt(indent) == '+');
+        if (!item) {
+            if (indent == line.length()) { // blank lines don't end a list
+                return false;
+            }
+            if (indent == 0) {
+                listIndents.clear();
+            }
+            return false;
+        }
+
+        while (!listIndents.isEmpty() && listIndents.peek() > indent) {
+            listIndents.pop();
+        }
+        if (listIndents.isEmpty() || listIndents.peek() < indent) {
+            listIndents.push(indent);
+        }
+        if (listIndents.size() == 1) {
+            return false;
+        }
+
+        for (int i = 0; i < listIndents.size(); i++) {
+            writer.append('*');
+        }
+        inline(line, indent + 1);
+        return true;
+    }
+
+    // inline code has no link and is literal if it has formatting marks (asciidoc formats monospace): `a*b*` -> `+a*b*+`
+    private void inline(final String line, final int begin) throws IOException {
+        int from = begin;
+        int open = line.indexOf('`', from);
+        while (open >= 0) {
+            final int close = line.indexOf('`', open + 1);
+            if (close < 0) {
+                break;
+            }
+            links(line, from, open);
+            if (hasFormattingMark(line, open + 1, close)) {
+                writer.append("`+").append(line, open + 1, close).append("+`");
+            } else {
+                writer.append(line, open, close + 1);
+            }
+            from = close + 1;
+            open = line.indexOf('`', from);
+        }
+        links(line, from, line.length());
+    }
+
+    // [text](url) -> link:url[text], only in line[begin, end)
+    private void links(final String line, final int begin, final int end) throws IOException {
+        int from = begin;
+        int separator = line.indexOf("](", from);
+        while (separator >= 0 && separator < end) {
+            final int start = line.lastIndexOf('[', separator);
+            final int close = line.indexOf(')', separator + 2);
+            if (close < 0 || close >= end) {
+                break;
+            }
+            if (start < from || line.indexOf(']', start) != separator) {
+                separator = line.indexOf("](", separator + 2);
+                continue;
+            }
+
+            String url = line.substring(separator + 2, close);
+            if (url.startsWith("../") && url.endsWith("README.html")) { // hack for old relative links
+                url = url.substring("../".length(), url.length() - "/README.html".length()) + ".html";
+            }
+            writer.append(line, from, start).append("link:").append(url).append('[').append(line, start + 1, separator).append(']');
+            from = close + 1;
+            separator = line.indexOf("](", from);
+        }
+        writer.append(line, from, end);
+    }
+
+    private static boolean hasFormattingMark(final String line, final int start, final int end) {
+        if (end - start > 1 && line.charAt(start) == '+' && line.charAt(end - 1) == '+') { // already literal
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) == '*' || line.charAt(i) == '_') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String skipBlankLines(final String current) throws IOException {
+        String line = current;
+        while (line != null && line.trim().isEmpty()) {
+            line = reader.readLine();
+        }
+        return line;
+    }
+
+    // same as line.replaceFirst("    ", "") without the regex
+    private void unindent(final String line) throws IOException {
+        final int indent = line.indexOf(INDENT);
+        if (indent < 0) {
+            writer.append(line);
+        } else {
+            writer.append(line, 0, indent).append(line, indent + INDENT.length(), line.length());
+        }
+        writer.append('\n');
+    }
+
+    private static String closingTag(final String line) {
+        final int start = line.indexOf('<') + 1;
+        int end = start;
+        while (end < line.length() && line.charAt(end) != ' ' && line.charAt(end) != '>') {
+            end++;
+        }
+        return "</" + line.substring(start, end) + ">";
+    }
+}
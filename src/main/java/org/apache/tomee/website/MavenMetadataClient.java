@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import lombok.Data;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+
+// reads the versions of maven-metadata.xml files. The versions are kept in a cache file with the
+// ETag/Last-Modified of the metadata so next runs only download the metadata which changed (304 otherwise).
+// If the repository can't be reached the cached versions are used.
+public class MavenMetadataClient {
+    private static final SAXParserFactory FACTORY = SAXParserFactory.newInstance();
+    private static final ThreadLocal<SAXParser> PARSERS = ThreadLocal.withInitial(() -> {
+        try {
+            return FACTORY.newSAXParser();
+        } catch (final ParserConfigurationException | SAXException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    static {
+        FACTORY.setNamespaceAware(false);
+        FACTORY.setValidating(false);
+    }
+
+    private final File cache;
+    private final int timeout;
+    private final Map<String, CachedMetadata> entries;
+    private volatile boolean dirty;
+
+    public MavenMetadataClient(final File cache, final int timeout) throws IOException {
+        this.cache = cache;
+        this.timeout = timeout;
+        this.entries = load(cache);
+    }
+
+    /**
+     * @param url the maven-metadata.xml URL.
+     * @return the versions it lists.
+     */
+    public Collection<String> versions(final String url) {
+        final CachedMetadata cached = entries.get(url);
+        try {
+            final HttpURLConnection connection = HttpURLConnection.class.cast(new URL(url).openConnection());
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            if (cached != null) {
+                if (cached.getEtag() != null) {
+                    connection.setRequestProperty("If-None-Match", cached.getEtag());
+                }
+                if (cached.getLastModified() != null) {
+                    connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+                }
+            }
+
+            final int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                connection.getInputStream().close();
+                return cached.getVersions();
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Got " + status + " for " + url);
+            }
+
+            final MetadataHandler handler = new MetadataHandler();
+            try (final InputStream stream = connection.getInputStream()) {
+                final SAXParser parser = PARSERS.get();
+                try {
+                    parser.parse(stream, handler);
+                } finally {
+                    parser.reset();
+                }
+            }
+            entries.put(url, new CachedMetadata(
+                    connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), handler.versions));
+            dirty = true;
+            return handler.versions;
+        } catch (final Exception e) {
+            if (cached != null) {
+                System.err.println("Can't read " + url + " (" + e.getMessage() + "), using cached versions");
+                return cached.getVersions();
+            }
+            e.printStackTrace();
+            return emptyList();
+        }
+    }
+
+    public void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        final List<String> lines = new ArrayList<>(entries.size() + 1);
+        lines.add("# url\tetag\tlast-modified\tversions ('-' when there is no header)");
+        entries.forEach((url, metadata) -> lines.add(url
+                + '\t' + (metadata.getEtag() == null ? "-" : metadata.getEtag())
+                + '\t' + (metadata.getLastModified() == null ? "-" : metadata.getLastModified())
+                + '\t' + String.join(",", metadata.getVersions())));
+        Files.write(cache.toPath(), lines, StandardCharsets.UTF_8);
+        dirty = false;
+    }
+
+    private static Map<String, CachedMetadata> load(final File file) throws IOException {
+        final Map<String, CachedMetadata> entries = new ConcurrentSkipListMap<>(); // sorted to keep the file stable
+        if (!file.isFile()) {
+            return entries;
+        }
+        for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] parts = line.split("\t", -1);
+            if (parts.length != 4) {
+                throw new IllegalStateException("Invalid line in " + file + ": " + line);
+            }
+            entries.put(parts[0], new CachedMetadata(
+                    "-".equals(parts[1]) ? null : parts[1],
+                    "-".equals(parts[2]) ? null : parts[2],
+                    parts[3].isEmpty() ? emptyList() : asList(parts[3].split(","))));
+        }
+        return entries;
+    }
+
+    @Data
+    private static class CachedMetadata {
+        private final String etag;
+        private final String lastModified;
+        private final Collection<String> versions;
+    }
+
+    // only keeps metadata/versioning/versions/version values
+    private static class MetadataHandler extends DefaultHandler {
+        private final StringBuilder text = new StringBuilder();
+        private final Collection<String> versions = new ArrayList<>();
+        private boolean versioning = false;
+        private boolean inVersions = false;
+        private boolean version = false;
+
+        @Override
+        public void startElement(final String uri, final String localName, final String name, final Attributes attributes) {
+            if ("versioning".equalsIgnoreCase(name)) {
+                versioning = true;
+            } else if ("versions".equalsIgnoreCase(name)) {
+                inVersions = true;
+            } else if (versioning && inVersions && "version".equalsIgnoreCase(name)) {
+                version = true;
+                text.setLength(0);
+            }
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start, final int length) {
+            if (version) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String name) {
+            if ("versioning".equalsIgnoreCase(name)) {
+                versioning = false;
+            } else if ("versions".equalsIgnoreCase(name)) {
+                inVersions = false;
+            } else if (version && "version".equalsIgnoreCase(name)) {
+                versions.add(text.toString().trim());
+                version = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static java.util.Arrays.asList;
+
+// Maven version ordering (same semantic as org.apache.maven.artifact.versioning.ComparableVersion)
+// without the maven-artifact dependency: 1.0.0-M1 < 1.0.0-rc1 < 1.0.0 < 1.0.0-sp1 < 1.0.1 < 1.0.10.
+// The version is tokenized once so comparisons don't allocate.
+public final class MavenVersion implements Comparable<MavenVersion> {
+    private static final List<String> QUALIFIERS = asList("alpha", "beta", "milestone", "rc", "snapshot", "", "sp");
+    private static final String RELEASE_INDEX = String.valueOf(QUALIFIERS.indexOf(""));
+
+    private final String value;
+    private final ListItem items;
+
+    public MavenVersion(final String version) {
+        this.value = version;
+        this.items = parse(version.toLowerCase(Locale.ENGLISH));
+    }
+
+    @Override
+    public int compareTo(final MavenVersion other) {
+        return items.compareTo(other.items);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return MavenVersion.class.isInstance(o) && compareTo(MavenVersion.class.cast(o)) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return items.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+
+    private static ListItem parse(final String version) {
+        final ListItem root = new ListItem();
+        final List<ListItem> lists = new ArrayList<>();
+        lists.add(root);
+        ListItem list = root;
+        boolean digit = false;
+        int start = 0;
+        for (int i = 0; i < version.length(); i++) {
+            final char c = version.charAt(i);
+            if (c == '.') {
+                list.add(i == start ? IntItem.ZERO : item(digit, version.substring(start, i)));
+                start = i + 1;
+            } else if (c == '-') {
+                list.add(i == start ? IntItem.ZERO : item(digit, version.substring(start, i)));
+                start = i + 1;
+                list.add(list = new ListItem());
+                lists.add(list);
+            } else if (Character.isDigit(c)) {
+                if (!digit && i > start) { // 1.0alpha1 -> [1, 0, [alpha, [1]]]
+                    if (!list.isNull()) { // a qualifier after a dot opens a sub list like a dash: 1.0.a1 == 1.0-a1
+                        list.add(list = new ListItem());
+                        lists.add(list);
+                    }
+                    list.add(new StringItem(version.substring(start, i), true));
+                    start = i;
+                    list.add(list = new ListItem());
+                    lists.add(list);
+                }
+                digit = true;
+            } else {
+                if (digit && i > start) {
+                    list.add(item(true, version.substring(start, i)));
+                    start = i;
+                    list.add(list = new ListItem());
+                    lists.add(list);
+                }
+                digit = false;
+            }
+        }
+        if (version.length() > start) {
+            if (!digit && !list.isNull()) { // 2.0.a == 2.0-a
+                list.add(list = new ListItem());
+                lists.add(list);
+            }
+            list.add(item(digit, version.substring(start)));
+        }
+        for (int i = lists.size() - 1; i >= 0; i--) { // sub lists first
+            lists.get(i).normalize();
+        }
+        return root;
+    }
+
+    private static Item item(final boolean digit, final String token) {
+        return digit ? new IntItem(token) : new StringItem(token, false);
+    }
+
+    private interface Item extends Comparable<Item> {
+        boolean isNull(); // 0, "" (release) or empty list, ignored at the end of a version: 1.0 == 1
+    }
+
+    private static final class IntItem implements Item {
+        private static final IntItem ZERO = new IntItem("0");
+
+        private final BigInteger value;
+
+        private IntItem(final String value) {
+            this.value = new BigInteger(value);
+        }
+
+        @Override
+        public boolean isNull() {
+            return BigInteger.ZERO.equals(value);
+        }
+
+        @Override
+        public int compareTo(final Item item) {
+            if (item == null) {
+                return isNull() ? 0 : 1;
+            }
+            if (IntItem.class.isInstance(item)) {
+                return value.compareTo(IntItem.class.cast(item).value);
+            }
+            return 1; // 1.1 > 1-sp, 1.1 > 1-1
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return IntItem.class.isInstance(o) && value.equals(IntItem.class.cast(o).value);
+        }
+    }
+
+    private static final class StringItem implements Item {
+        private final String key; // comparable form of the qualifier
+
+        private StringItem(final String value, final boolean followedByDigit) {
+            String qualifier = value;
+            if (followedByDigit && value.length() == 1) { // a1, b1, m1
+                switch (value.charAt(0)) {
+                    case 'a':
+                        qualifier = "alpha";
+                        break;
+                    case 'b':
+                        qualifier = "beta";
+                        break;
+                    case 'm':
+                        qualifier = "milestone";
+                        break;
+                    default:
+                }
+            }
+            switch (qualifier) {
+                case "ga":
+                case "final":
+                case "release":
+                    qualifier = "";
+                    break;
+                case "cr":
+                    qualifier = "rc";
+                    break;
+                default:
+            }
+            final int index = QUALIFIERS.indexOf(qualifier);
+            this.key = index >= 0 ? String.valueOf(index) : (QUALIFIERS.size() + "-" + qualifier); // unknown ones are after sp
+        }
+
+        @Override
+        public boolean isNull() {
+            return RELEASE_INDEX.equals(key);
+        }
+
+        @Override
+        public int compareTo(final Item item) {
+            if (item == null) { // 1-rc < 1, 1-sp > 1
+                return key.compareTo(RELEASE_INDEX);
+            }
+            if (StringItem.class.isInstance(item)) {
+                return key.compareTo(StringItem.class.cast(item).key);
+            }
+            return -1; // qualifiers are before numbers and sub lists
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return StringItem.class.isInstance(o) && key.equals(StringItem.class.cast(o).key);
+        }
+    }
+
+    private static final class ListItem implements Item {
+        private final List<Item> items = new ArrayList<>();
+
+        private void add(final Item item) {
+            items.add(item);
+        }
+
+        // drops the null items before the sub lists and at the end: 1.0-1 == 1-1, 1.0.0 == 1
+        private void normalize() {
+            for (int i = items.size() - 1; i >= 0; i--) {
+                final Item item = items.get(i);
+                if (item.isNull()) {
+                    items.remove(i);
+                } else if (!ListItem.class.isInstance(item)) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public boolean isNull() {
+            return items.isEmpty();
+        }
+
+        @Override
+        public int compareTo(final Item item) {
+            if (item == null) { // 1-0.1 > 1
+                for (final Item current : items) {
+                    final int result = current.compareTo(null);
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                return 0;
+            }
+            if (IntItem.class.isInstance(item)) {
+                return -1; // 1-1 < 1.1
+            }
+            if (StringItem.class.isInstance(item)) {
+                return 1; // 1-1 > 1-sp
+            }
+
+            final List<Item> others = ListItem.class.cast(item).items;
+            for (int i = 0; i < Math.max(items.size(), others.size()); i++) {
+                final Item left = i < items.size() ? items.get(i) : null;
+                final Item right = i < others.size() ? others.get(i) : null;
+                final int result = left == null ? (right == null ? 0 : -right.compareTo(null)) : left.compareTo(right);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return items.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return ListItem.class.isInstance(o) && items.equals(ListItem.class.cast(o).items);
+        }
+    }
+}
@@ -19,27 +19,54 @@ package org.apache.tomee.website;
 import lombok.RequiredArgsConstructor;
 import org.asciidoctor.Asciidoctor;
 import org.asciidoctor.AttributesBuilder;
+import org.asciidoctor.OptionsBuilder;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import static java.util.stream.Collectors.joining;
 import static lombok.AccessLevel.PRIVATE;
 import static org.asciidoctor.OptionsBuilder.options;
 
 @RequiredArgsConstructor(access = PRIVATE)
 public class PDFify {
+    // PDFs are only generated again when the document, one of its includes or the conversion options changed.
+    // The cache is stored next to the output folder (target/site-tmp.pdf.cache) so a clean build resets both.
+    private static final String CACHE_SUFFIX = ".pdf.cache";
+    private static final String NO_PDF = "-"; // not a PDF candidate (no jbake-tomeepdf or manual one), avoids to scan it again
+    private static final String OPTIONS_SIGNATURE = signature(pdfOptions().asMap()) + ",asciidoctorj-pdf=" + pdfVersion();
+    private static final Pattern INCLUDE = Pattern.compile("^include::([^\\[]+)\\[", Pattern.MULTILINE);
+
     public static void generatePdf(final File from, final File targetBase) throws IOException {
         final Path sourceBase = from.toPath();
-        final Asciidoctor asciidoctor = Asciidoctor.Factory.create();
+        final File cacheFile = new File(targetBase.getParentFile(), targetBase.getName() + CACHE_SUFFIX);
+        final Map<String, String> cache = loadCache(cacheFile);
+        final AsciidoctorHolder asciidoctor = new AsciidoctorHolder(); // booting JRuby is slow, only do it if needed
         final ExecutorService pool = Executors.newFixedThreadPool(16);
         Files.walkFileTree(sourceBase, new SimpleFileVisitor<Path>() {
             @Override
@@ -49,17 +76,34 @@ public class PDFify {
                     pool.submit(() -> {
                         final String path = sourceBase.relativize(file).toString();
                         final File target = new File(targetBase, path.substring(0, path.length() - "adoc".length()) + "pdf");
-                        final File asFile = file.toFile();
-                        final Map<String, Object> attributes = asciidoctor.readDocumentHeader(asFile).getAttributes();
+                        final String key = path.replace(File.separatorChar, '/');
+                        final String hash = hash(file);
+                        final String cached = cache.get(key);
+                        if (cached != null && cached.equals(NO_PDF + hash)) {
+                            return;
+                        }
+                        if (hash.equals(cached) && target.isFile()) {
+                            return;
+                        }
+
+                        final Map<String, String> attributes;
+                        try { // plain java scan, asciidoctor is only used for the real PDF candidates
+                            attributes = AdocHeaderScanner.attributes(file);
+                        } catch (final IOException e) {
+                            throw new IllegalStateException(e);
+                        }
                         // if we generate the PDF link we need to create the PDF excepted if it is expected to be manual
                         if (attributes.containsKey("jbake-tomeepdf") && !attributes.containsKey("jbake-tomeepdf-manual")) {
-                            asciidoctor.convertFile(
-                                    asFile,
-                                    options().docType("article")
-                                            .backend
-                                            ("pdf")
-                                    .attributes(AttributesBuilder.attributes().attribute("source-highlighter", "coderay")).toFile(target).get());
+                            if (!target.getParentFile().isDirectory() && !target.getParentFile().mkdirs()) {
+                                throw new IllegalStateException("Can't create " + target.getParentFile());
+                            }
+                            try (final BuildReport.Probe probe = BuildReport.probe("pdf", key)) {
+                                asciidoctor.get().convertFile(file.toFile(), pdfOptions().toFile(target).get());
+                            }
+                            cache.put(key, hash);
                             System.out.println("Generated " + target);
+                        } else {
+                            cache.put(key, NO_PDF + hash);
                         }
                     });
                 }
@@ -72,5 +116,126 @@ public class PDFify {
         } catch (final InterruptedException e) {
             Thread.interrupted();
         }
+
+        // deleted documents: drop their entry and their PDF
+        cache.entrySet().removeIf(entry -> {
+            if (Files.isRegularFile(sourceBase.resolve(entry.getKey()))) {
+                return false;
+            }
+            if (!entry.getValue().startsWith(NO_PDF)) {
+                final File target = new File(targetBase, entry.getKey().substring(0, entry.getKey().length() - "adoc".length()) + "pdf");
+                if (target.isFile() && !target.delete()) {
+                    System.err.println("Can't delete " + target);
+                }
+            }
+            return true;
+        });
+        saveCache(cacheFile, cache);
+    }
+
+    private static OptionsBuilder pdfOptions() {
+        return options().docType("article")
+                .backend("pdf")
+                .attributes(AttributesBuilder.attributes().attribute("source-highlighter", "coderay"));
+    }
+
+    // sorted to not depend on the map implementation, the attributes are a nested map
+    private static String signature(final Map<?, ?> options) {
+        return new TreeMap<Object, Object>(options).entrySet().stream()
+                .map(e -> e.getKey() + "=" + (Map.class.isInstance(e.getValue()) ? "{" + signature(Map.class.cast(e.getValue())) + "}" : e.getValue()))
+                .collect(joining(","));
+    }
+
+    // asciidoctorj-pdf only ships gems (no java package to ask), its manifest has the version
+    private static String pdfVersion() {
+        try {
+            final Enumeration<URL> manifests = PDFify.class.getClassLoader().getResources("META-INF/MANIFEST.MF");
+            while (manifests.hasMoreElements()) {
+                try (final InputStream is = manifests.nextElement().openStream()) {
+                    final Attributes attributes = new Manifest(is).getMainAttributes();
+                    if ("asciidoctorj-pdf".equals(attributes.getValue("Implementation-Title"))) {
+                        return attributes.getValue("Implementation-Version");
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            System.err.println("Can't read the asciidoctorj-pdf version: " + e.getMessage());
+        }
+        return "unknown";
+    }
+
+    private static String hash(final Path file) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(OPTIONS_SIGNATURE.getBytes(StandardCharsets.UTF_8));
+            hash(file, digest, new HashSet<>());
+            final StringBuilder builder = new StringBuilder();
+            for (final byte b : digest.digest()) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (final NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // includes are part of the rendered document so they are part of the hash too
+    private static void hash(final Path file, final MessageDigest digest, final Collection<Path> visited) throws IOException {
+        if (!visited.add(file.toAbsolutePath().normalize())) {
+            return;
+        }
+
+        final byte[] content = Files.readAllBytes(file);
+        digest.update(file.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+        digest.update(content);
+
+        final Matcher includes = INCLUDE.matcher(new String(content, StandardCharsets.UTF_8));
+        while (includes.find()) {
+            final Path include = file.resolveSibling(includes.group(1).trim());
+            if (Files.isRegularFile(include)) {
+                hash(include, digest, visited);
+            }
+        }
+    }
+
+    private static Map<String, String> loadCache(final File cacheFile) {
+        final Map<String, String> cache = new ConcurrentHashMap<>();
+        if (cacheFile.isFile()) {
+            final Properties properties = new Properties();
+            try (final InputStream is = Files.newInputStream(cacheFile.toPath())) {
+                properties.load(is);
+            } catch (final IOException e) {
+                System.err.println("Can't read " + cacheFile + ", regenerating all PDFs");
+                return cache;
+            }
+            properties.stringPropertyNames().forEach(k -> cache.put(k, properties.getProperty(k)));
+        }
+        return cache;
+    }
+
+    private static void saveCache(final File cacheFile, final Map<String, String> cache) throws IOException {
+        if (!cacheFile.getParentFile().isDirectory() && !cacheFile.getParentFile().mkdirs()) {
+            throw new IllegalStateException("Can't create " + cacheFile.getParentFile());
+        }
+        final Properties properties = new Properties();
+        properties.putAll(cache);
+        try (final OutputStream os = Files.newOutputStream(cacheFile.toPath())) {
+            properties.store(os, "PDFify cache, delete it to regenerate all PDFs");
+        }
+    }
+
+    private static class AsciidoctorHolder {
+        private volatile Asciidoctor instance;
+
+        private Asciidoctor get() {
+            if (instance == null) {
+                synchronized (this) {
+                    if (instance == null) {
+                        instance = Asciidoctor.Factory.create();
+                    }
+                }
+            }
+            return instance;
+        }
     }
 }
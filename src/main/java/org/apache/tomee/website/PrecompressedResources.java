@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import lombok.Data;
+
+import org.apache.catalina.Valve;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.stream.Collectors.toList;
+
+// post-bake stage: writes a .gz sibling of the textual files and computes a content hash (strong ETag) of
+// all the files so the preview server (see valve()) serves them as the CDN does: precompressed when the client
+// accepts gzip, with Vary/ETag headers and 304 responses for revalidations.
+// Only files updated since the previous run are hashed/compressed again.
+public class PrecompressedResources {
+    private static final Set<String> COMPRESSIBLE = new HashSet<>(Arrays.asList("html", "css", "js", "svg", "xml", "json", "txt"));
+
+    private final File root;
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+
+    public PrecompressedResources(final File root) {
+        this.root = root;
+    }
+
+    /**
+     * @return the number of (re)compressed files.
+     */
+    public int update() throws IOException {
+        final Path base = root.toPath();
+        final AtomicInteger compressed = new AtomicInteger();
+        final Set<String> existing = ConcurrentHashMap.newKeySet();
+        try (final Stream<Path> files = Files.walk(base)) {
+            files.filter(Files::isRegularFile).collect(toList()).parallelStream().forEach(file -> {
+                final String name = file.getFileName().toString();
+                if (name.endsWith(".gz")) {
+                    final Path source = file.resolveSibling(name.substring(0, name.length() - ".gz".length()));
+                    if (!Files.exists(source)) { // page deleted
+                        delete(file);
+                    }
+                    return;
+                }
+
+                final String path = '/' + base.relativize(file).toString().replace(File.separatorChar, '/');
+                existing.add(path);
+                try {
+                    final long lastModified = Files.getLastModifiedTime(file).toMillis();
+                    final long length = Files.size(file);
+                    final Resource current = resources.get(path);
+                    if (current != null && current.getLastModified() == lastModified && current.getLength() == length) {
+                        return;
+                    }
+
+                    final byte[] content = Files.readAllBytes(file);
+                    final boolean compress = isCompressible(name) && content.length > 256; // gzip overhead
+                    if (compress && gzip(file, content, lastModified)) {
+                        compressed.incrementAndGet();
+                    }
+                    resources.put(path, new Resource(file.toFile(), lastModified, length, hash(content), compress));
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        resources.keySet().retainAll(existing);
+        return compressed.get();
+    }
+
+    public Valve valve() {
+        return new PrecompressedValve();
+    }
+
+    // the .gz has the modification date of its source so an up to date one can be reused (restart)
+    private static boolean gzip(final Path file, final byte[] content, final long lastModified) throws IOException {
+        final Path gz = file.resolveSibling(file.getFileName() + ".gz");
+        if (Files.exists(gz) && Files.getLastModifiedTime(gz).toMillis() == lastModified) {
+            return false;
+        }
+        try (final OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz), 8192) {{
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }}) {
+            out.write(content);
+        }
+        Files.setLastModifiedTime(gz, FileTime.fromMillis(lastModified));
+        return true;
+    }
+
+    private static void delete(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            System.err.println("Can't delete " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isCompressible(final String name) {
+        final int dot = name.lastIndexOf('.');
+        return dot > 0 && COMPRESSIBLE.contains(name.substring(dot + 1).toLowerCase());
+    }
+
+    private static String hash(final byte[] content) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Data
+    private static class Resource {
+        private final File file;
+        private final long lastModified;
+        private final long length;
+        private final String hash;
+        private final boolean compressed;
+    }
+
+    // serves the files known by the last update(), anything else (or a file changed since) goes to the webapp.
+    // A valve and not a filter since it is added to an already deployed webapp.
+    private class PrecompressedValve extends ValveBase {
+        private PrecompressedValve() {
+            super(true);
+        }
+
+        @Override
+        public void invoke(final Request request, final Response response) throws IOException, ServletException {
+            final String method = request.getMethod();
+            String path = request.getRequestURI().substring(request.getContextPath().length());
+            if (path.endsWith("/")) {
+                path += "index.html";
+            }
+
+            final Resource resource = resources.get(path);
+            if ((!"GET".equals(method) && !"HEAD".equals(method)) || resource == null
+                    || resource.getFile().lastModified() != resource.getLastModified()) {
+                getNext().invoke(request, response);
+                return;
+            }
+
+            final String acceptEncoding = request.getHeader("Accept-Encoding");
+            final File gz = new File(resource.getFile().getPath() + ".gz");
+            final boolean gzip = resource.isCompressed() && acceptEncoding != null && acceptEncoding.contains("gzip")
+                    && gz.lastModified() == resource.getLastModified();
+            final String etag = '"' + resource.getHash() + (gzip ? "-gz" : "") + '"'; // strong ETags are per representation
+
+            if (resource.isCompressed()) {
+                response.setHeader("Vary", "Accept-Encoding");
+            }
+            response.setHeader("ETag", etag);
+            response.setHeader("Cache-Control", "no-cache"); // always revalidate, it is a preview
+            response.setDateHeader("Last-Modified", resource.getLastModified());
+
+            final String ifNoneMatch = request.getHeader("If-None-Match");
+            if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || Arrays.stream(ifNoneMatch.split(","))
+                    .map(String::trim)
+                    .anyMatch(etag::equals))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            final File served = gzip ? gz : resource.getFile();
+            final String mimeType = request.getServletContext().getMimeType(resource.getFile().getName());
+            if (mimeType != null) {
+                response.setContentType(mimeType.startsWith("text/") || mimeType.endsWith("xml") || mimeType.endsWith("javascript")
+                        ? mimeType + ";charset=UTF-8" : mimeType);
+            }
+            if (gzip) {
+                response.setHeader("Content-Encoding", "gzip");
+            }
+            response.setContentLengthLong(served.length());
+            if ("HEAD".equals(method)) {
+                return;
+            }
+            try (final InputStream in = Files.newInputStream(served.toPath())) {
+                final OutputStream out = response.getOutputStream();
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        }
+    }
+}
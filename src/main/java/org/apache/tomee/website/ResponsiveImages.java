@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import lombok.Data;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+// post-bake stage: the jpg/png images of the assets get smaller derivatives (<name>-<width>w.<ext>) and the <img>
+// of the pages rendered since the bake started reference them with a srcset. Images with a fixed width (width
+// attribute or style) use density descriptors (1x/2x), the others width descriptors.
+// Derivatives are stored in a cache folder (images.cache) indexed by the sha1 of the source so they are only
+// computed when the image changes. Only the JDK (ImageIO/Java2D) is used.
+public class ResponsiveImages {
+    private static final Pattern IMG = Pattern.compile("<img\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE = Pattern.compile("([a-zA-Z-]+)\\s*=\\s*(['\"])(.*?)\\2");
+    private static final Pattern STYLE_WIDTH = Pattern.compile("(?:^|;)\\s*width\\s*:\\s*(\\d+)px");
+
+    private final File images;
+    private final File output;
+    private final File destination;
+    private final File cache;
+    private final int[] widths;
+    private final float quality;
+    private final Map<String, Image> index = new ConcurrentHashMap<>(); // sha1 -> derivatives
+    private final Map<String, Image> byPath = new ConcurrentHashMap<>(); // destination relative path -> derivatives
+    private boolean indexLoaded;
+
+    /**
+     * @param images the source folder of the images (assets/img).
+     * @param output where the assets of this folder are copied (destination/img).
+     * @param destination the site root.
+     */
+    public ResponsiveImages(final File images, final File output, final File destination) {
+        this.images = images;
+        this.output = output;
+        this.destination = destination;
+        this.cache = new File(System.getProperty("jbake.images.cache", "images.cache"));
+        this.widths = Stream.of(System.getProperty("jbake.images.widths", "160,320,640,1280").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).sorted().toArray();
+        this.quality = Float.parseFloat(System.getProperty("jbake.images.quality", "0.8"));
+        ImageIO.setUseCache(false); // images are small, no need of temporary files
+    }
+
+    /**
+     * @param since only pages written after this date (ms) get their images rewritten.
+     * @return the number of updated pages.
+     */
+    public int update(final long since) throws IOException {
+        loadIndex();
+        final File[] files = images.listFiles((dir, name) -> isSupported(name));
+        if (files == null) {
+            return 0;
+        }
+
+        final AtomicBoolean dirty = new AtomicBoolean();
+        final Path base = destination.toPath();
+        byPath.clear();
+        Stream.of(files).parallel().forEach(file -> {
+            try {
+                final byte[] content = Files.readAllBytes(file.toPath());
+                final String sha1 = hash(content);
+                Image image = index.get(sha1);
+                if (image == null || !image.isCached(cache)) {
+                    image = resize(file, content, sha1);
+                    if (image == null) {
+                        return;
+                    }
+                    index.put(sha1, image);
+                    dirty.set(true);
+                }
+
+                for (final int width : image.getWidths()) {
+                    final Path derivative = new File(output, derivativeName(file.getName(), width)).toPath();
+                    final Path cached = image.cached(cache, width);
+                    if (!Files.exists(derivative) || Files.size(derivative) != Files.size(cached)) {
+                        Files.createDirectories(derivative.getParent());
+                        Files.copy(cached, derivative, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                byPath.put(base.relativize(new File(output, file.getName()).toPath()).toString().replace(File.separatorChar, '/'), image);
+            } catch (final IOException | RuntimeException e) {
+                System.err.println("Can't process " + file + ": " + e.getMessage());
+            }
+        });
+        if (dirty.get()) {
+            saveIndex();
+        }
+
+        final AtomicInteger updated = new AtomicInteger();
+        final long from = since - 2000; // file systems with a second precision, rewriting is idempotent anyway
+        try (final Stream<Path> pages = Files.walk(base)) {
+            pages.filter(p -> p.getFileName().toString().endsWith(".html")).collect(toList()).parallelStream().forEach(page -> {
+                try {
+                    if (Files.getLastModifiedTime(page).toMillis() < from) {
+                        return;
+                    }
+                    final String html = new String(Files.readAllBytes(page), StandardCharsets.UTF_8);
+                    final String rewritten = rewrite(html, base.relativize(page.getParent() == null ? base : page.getParent()));
+                    if (!html.equals(rewritten)) {
+                        Files.write(page, rewritten.getBytes(StandardCharsets.UTF_8));
+                        updated.incrementAndGet();
+                    }
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        return updated.get();
+    }
+
+    private String rewrite(final String html, final Path folder) {
+        final Matcher matcher = IMG.matcher(html);
+        if (!matcher.find()) {
+            return html;
+        }
+
+        final StringBuffer out = new StringBuffer(html.length() + 512);
+        do {
+            final String tag = matcher.group();
+            final Map<String, String> attributes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            final Matcher attribute = ATTRIBUTE.matcher(tag);
+            while (attribute.find()) {
+                attributes.put(attribute.group(1), attribute.group(3));
+            }
+
+            final String src = attributes.get("src");
+            if (src == null || attributes.containsKey("srcset") || src.contains("://") || src.startsWith("/") || src.startsWith("data:")) {
+                continue;
+            }
+            final Image image = byPath.get(folder.resolve(src).normalize().toString().replace(File.separatorChar, '/'));
+            if (image == null || image.getWidths().isEmpty()) {
+                continue;
+            }
+
+            final String replacement = withSrcset(tag, src, image, displayWidth(attributes));
+            matcher.appendReplacement(out, Matcher.quoteReplacement(replacement));
+        } while (matcher.find());
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    private String withSrcset(final String tag, final String src, final Image image, final int displayWidth) {
+        final int slash = src.lastIndexOf('/');
+        final String folder = src.substring(0, slash + 1);
+        final String name = src.substring(slash + 1);
+        final int insertAt = tag.endsWith("/>") ? tag.length() - 2 : tag.length() - 1;
+        if (displayWidth <= 0) {
+            final String srcset = Stream.concat(
+                    image.getWidths().stream().map(w -> folder + derivativeName(name, w) + ' ' + w + 'w'),
+                    Stream.of(src + ' ' + image.getWidth() + 'w'))
+                    .collect(joining(", "));
+            return tag.substring(0, insertAt).replaceAll("\\s+$", "") + " srcset=\"" + srcset + "\" sizes=\"100vw\"" + tag.substring(insertAt);
+        }
+
+        // the smallest image covering the display size for each density, the source itself if none is big enough
+        final String x1 = candidate(folder, name, src, image, displayWidth);
+        final String x2 = candidate(folder, name, src, image, displayWidth * 2);
+        if (x1.equals(src)) {
+            return tag;
+        }
+        final String head = tag.substring(0, insertAt)
+                .replaceFirst("(\\ssrc\\s*=\\s*)(['\"])" + Pattern.quote(src) + "\\2", "$1$2" + Matcher.quoteReplacement(x1) + "$2");
+        return head.replaceAll("\\s+$", "") + " srcset=\"" + x1 + " 1x, " + x2 + " 2x\"" + tag.substring(insertAt);
+    }
+
+    private static String candidate(final String folder, final String name, final String src, final Image image, final int width) {
+        return image.getWidths().stream().filter(w -> w >= width).findFirst()
+                .map(w -> folder + derivativeName(name, w))
+                .orElse(src);
+    }
+
+    private static int displayWidth(final Map<String, String> attributes) {
+        final String width = attributes.get("width");
+        if (width != null && width.matches("\\d+")) {
+            return Integer.parseInt(width);
+        }
+        final String style = attributes.get("style");
+        if (style != null) {
+            final Matcher matcher = STYLE_WIDTH.matcher(style);
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        return -1;
+    }
+
+    // derivatives are only kept when they are lighter than the source
+    private Image resize(final File file, final byte[] content, final String sha1) throws IOException {
+        final BufferedImage source = ImageIO.read(new ByteArrayInputStream(content));
+        if (source == null) {
+            return null;
+        }
+
+        final String format = format(file.getName());
+        final List<Integer> generated = new ArrayList<>();
+        for (final int width : widths) {
+            if (width >= source.getWidth()) {
+                break;
+            }
+
+            final byte[] derivative = encode(scale(source, width), format);
+            if (derivative.length < content.length) {
+                final Path target = cache.toPath().resolve(sha1 + '-' + width + '.' + format);
+                Files.createDirectories(target.getParent());
+                Files.write(target, derivative);
+                generated.add(width);
+            }
+        }
+        return new Image(sha1, format, source.getWidth(), generated);
+    }
+
+    // successive halvings (bilinear) keep the quality close to an area average for big reductions
+    private static BufferedImage scale(final BufferedImage source, final int width) {
+        final int type = source.getTransparency() == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage current = source;
+        do {
+            final int w = Math.max(width, current.getWidth() / 2);
+            final int h = Math.max(1, (int) Math.round((double) source.getHeight() * w / source.getWidth()));
+            final BufferedImage next = new BufferedImage(w, h, type);
+            final Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (current.getWidth() > width);
+        return current;
+    }
+
+    private byte[] encode(final BufferedImage image, final String format) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (final MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    // format: sha1 \t format \t width \t derivative widths
+    private void loadIndex() throws IOException {
+        if (indexLoaded) {
+            return;
+        }
+        indexLoaded = true;
+
+        final File file = new File(cache, "index");
+        if (!file.isFile()) {
+            return;
+        }
+        for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            final String[] parts = line.split("\t", -1);
+            if (parts.length != 4 || line.startsWith("#")) {
+                continue;
+            }
+            final List<Integer> derivatives = parts[3].isEmpty() ?
+                    new ArrayList<>() : Stream.of(parts[3].split(",")).map(Integer::valueOf).collect(toList());
+            index.put(parts[0], new Image(parts[0], parts[1], Integer.parseInt(parts[2]), derivatives));
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        final Path file = new File(cache, "index").toPath();
+        Files.createDirectories(file.getParent());
+        try (final Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("# sha1\tformat\twidth\tderivatives\n");
+            for (final Image image : new TreeMap<>(index).values()) {
+                writer.write(image.getSha1() + '\t' + image.getFormat() + '\t' + image.getWidth() + '\t'
+                        + image.getWidths().stream().map(String::valueOf).collect(joining(",")) + '\n');
+            }
+        }
+    }
+
+    private static String derivativeName(final String name, final int width) {
+        final int dot = name.lastIndexOf('.');
+        return name.substring(0, dot) + '-' + width + 'w' + name.substring(dot);
+    }
+
+    private static boolean isSupported(final String name) {
+        final String lower = name.toLowerCase();
+        return (lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png")) && !lower.matches(".*-\\d+w\\.[a-z]+");
+    }
+
+    private static String format(final String name) {
+        return name.toLowerCase().endsWith(".png") ? "png" : "jpg";
+    }
+
+    private static String hash(final byte[] content) {
+        try {
+            final StringBuilder hex = new StringBuilder(40);
+            for (final byte b : MessageDigest.getInstance("SHA-1").digest(content)) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Data
+    private static class Image {
+        private final String sha1;
+        private final String format;
+        private final int width;
+        private final List<Integer> widths;
+
+        private Path cached(final File cache, final int derivative) {
+            return cache.toPath().resolve(sha1 + '-' + derivative + '.' + format);
+        }
+
+        private boolean isCached(final File cache) {
+            return widths.stream().allMatch(w -> Files.isRegularFile(cached(cache, w)));
+        }
+    }
+}
@@ -1,138 +1,207 @@
 package org.apache.tomee.website;
 
+import lombok.Data;
+import org.apache.johnzon.mapper.MapperBuilder;
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.config.sys.JaxbOpenejb;
 import org.apache.openejb.config.sys.ServiceProvider;
-import org.apache.openejb.config.sys.ServicesJar;
+import org.apache.openejb.util.OpenEjbVersion;
 import org.apache.openejb.util.SuperProperties;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
-// will stdout some doc from service-jar.xml
-// we could generate it in a template but will likely be manually updated
-// so using it as a kick off only
-public class ServiceJarHelper {
-    public static void main(final String[] args) throws Exception { // based on org.apache.openejb.config.sys.WikiGenerator
-        System.out.println();
-        System.out.println();
-        System.out.println("WARNING");
-        System.out.println("WARNING");
-        System.out.println("WARNING");
-        System.out.println("WARNING these generated contents are generally modified manually to enrich them");
-        System.out.println("WARNING don't overwrite the pages without checking you are losing or not any information");
-        System.out.println("WARNING");
-        System.out.println("WARNING");
-        System.out.println("WARNING");
-        System.out.println();
-        System.out.println();
-        new ServiceJarHelper("org.apache.openejb", new PrintWriter(System.out), true).generate();
-    }
+import static java.util.stream.Collectors.toList;
 
-    private final ServicesJar servicesJar;
-    private final PrintWriter out;
-    private final boolean resources;
+// renders the containers and resources of service-jar.xml to adoc fragments (one per provider) plus
+// containers.adoc/resources.adoc including them all. The admin/configuration pages are enriched manually
+// (samples, notes) so they don't include them and must not be overwritten by them: the fragments are written
+// outside of the sources (target/service-jar) as the reference to diff the pages with when upgrading TomEE.
+// Parsing service-jar.xml (JAXB) is slow so the providers are cached by TomEE version in service-jar.cache.
+public class ServiceJarHelper {
+    private static final String CACHE_FILE = "service-jar.cache";
 
-    public ServiceJarHelper(final String providerName, final PrintWriter printWriter, final boolean resources) throws OpenEJBException {
-        this.servicesJar = JaxbOpenejb.readServicesJar(providerName);
-        this.out = printWriter;
-        this.resources = resources;
+    public static void main(final String[] args) throws Exception {
+        final File output = new File(args.length > 0 ? args[0] : "target/service-jar");
+        System.out.println("Generated " + generate(output) + " fragment(s) in " + output);
+        System.out.println("WARNING the admin/configuration pages are enriched manually, don't overwrite them with these fragments");
+        System.out.println("WARNING without checking which information you would lose");
     }
 
-    public void generate() throws Exception {
-        // generate containers
-        final List<ServiceProvider> serviceProvider = servicesJar.getServiceProvider();
-        if (!resources) {
-            Collections.sort(serviceProvider, new Comparator<ServiceProvider>() {
-                @Override
-                public int compare(final ServiceProvider o1, final ServiceProvider o2) {
-                    return grade(o2) - grade(o1);
-                }
+    /**
+     * @param output folder where fragments are written (containers/ and resources/ sub folders).
+     * @return the number of fragments which changed.
+     */
+    public static int generate(final File output) throws IOException, OpenEJBException {
+        final List<Provider> providers = loadProviders("org.apache.openejb");
 
-                private int grade(final ServiceProvider i) {
-                    final String name = i.getClassName();
-                    if (name.contains("stateless")) {
-                        return 10;
-                    }
-                    if (name.contains("stateful")) {
-                        return 9;
-                    }
-                    if (name.contains("singleton")) {
-                        return 8;
-                    }
-                    if (name.contains("mdb")) {
-                        return 7;
-                    }
-                    if (name.contains("managed")) {
-                        return 6;
-                    }
-                    return 0;
-                }
-            });
+        final List<Provider> containers = providers.stream()
+                .filter(p -> "Container".equals(p.getService()))
+                .sorted(Comparator.comparingInt(ServiceJarHelper::grade).reversed())
+                .collect(toList());
 
-            for (final ServiceProvider provider : serviceProvider) {
-                if ("Container".equals(provider.getService())) {
-                    generateService(provider);
-                }
+        // several resources can share their types (aliases), only the first one is documented
+        final Collection<String> seen = new HashSet<>();
+        final List<Provider> resources = new ArrayList<>();
+        for (final Provider provider : providers) {
+            if ("Resource".equals(provider.getService()) && !seen.containsAll(provider.getTypes())) {
+                resources.add(provider);
+                seen.addAll(provider.getTypes());
             }
-        } else {
+        }
 
-            final List<String> seen = new ArrayList<>();
-            for (final ServiceProvider provider : servicesJar.getServiceProvider()) {
-                if ("Resource".equals(provider.getService())) {
+        final AtomicInteger updated = new AtomicInteger();
+        write(output, "containers", containers, updated);
+        write(output, "resources", resources, updated);
+        return updated.get();
+    }
 
-                    if (seen.containsAll(provider.getTypes())) {
-                        continue;
-                    }
+    private static void write(final File output, final String kind, final List<Provider> providers, final AtomicInteger updated) throws IOException {
+        final File folder = new File(output, kind);
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IllegalStateException("Can't create " + folder);
+        }
 
-                    generateService(provider);
+        providers.parallelStream().forEach(provider -> {
+            if (writeIfChanged(new File(folder, fileName(provider)), render(provider))) {
+                updated.incrementAndGet();
+            }
+        });
 
-                    seen.addAll(provider.getTypes());
-                }
+        final StringBuilder index = new StringBuilder();
+        providers.forEach(provider -> index.append("include::").append(kind).append('/').append(fileName(provider)).append("[]\n\n"));
+        if (writeIfChanged(new File(output, kind + ".adoc"), index.toString())) {
+            updated.incrementAndGet();
+        }
+    }
+
+    // unchanged fragments are not touched to not trigger a rebuild of the pages including them
+    private static boolean writeIfChanged(final File file, final String content) {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        try {
+            if (file.isFile() && Arrays.equals(bytes, Files.readAllBytes(file.toPath()))) {
+                return false;
             }
+            Files.write(file.toPath(), bytes);
+            return true;
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
         }
-        out.println();
-        out.flush();
     }
 
-    private void generateService(final ServiceProvider provider) {
-        final Map<String, String> defaults = new LinkedHashMap<>();
-        final Map<String, String> comments = new LinkedHashMap<>();
+    private static String fileName(final Provider provider) {
+        return provider.getId().replaceAll("[^a-zA-Z0-9._-]+", "-") + ".adoc";
+    }
 
-        final SuperProperties properties = (SuperProperties) provider.getProperties();
-        if (!properties.isEmpty()) {
-            for (final Object key : properties.keySet()) {
-                if (key instanceof String) {
-                    final String name = (String) key;
-                    if ("SkipImplicitAttributes".equals(name)) {
-                        continue;
-                    }
+    private static int grade(final Provider provider) {
+        final String name = provider.getClassName();
+        if (name.contains("stateless")) {
+            return 10;
+        }
+        if (name.contains("stateful")) {
+            return 9;
+        }
+        if (name.contains("singleton")) {
+            return 8;
+        }
+        if (name.contains("mdb")) {
+            return 7;
+        }
+        if (name.contains("managed")) {
+            return 6;
+        }
+        return 0;
+    }
 
-                    final Map<String, String> attributes = properties.getAttributes(name);
+    private static synchronized List<Provider> loadProviders(final String providerName) throws OpenEJBException {
+        final String version = OpenEjbVersion.get().getVersion();
+        final File cache = new File(CACHE_FILE);
+        if (cache.isFile()) {
+            try (final InputStream is = new FileInputStream(cache)) {
+                final ProviderCache cached = new MapperBuilder().build().readObject(is, ProviderCache.class);
+                if (version.equals(cached.getVersion()) && providerName.equals(cached.getProviderName())) {
+                    return cached.getProviders();
+                }
+            } catch (final IOException | RuntimeException e) {
+                System.err.println("Can't read " + CACHE_FILE + " (" + e.getMessage() + "), ignoring it");
+            }
+        }
 
-                    if (attributes.containsKey("hidden")) {
-                        continue;
-                    }
+        final List<Provider> providers = JaxbOpenejb.readServicesJar(providerName).getServiceProvider().stream()
+                .map(ServiceJarHelper::toProvider)
+                .collect(toList());
 
-                    final String value = properties.getProperty(name);
+        final ProviderCache cached = new ProviderCache();
+        cached.setVersion(version);
+        cached.setProviderName(providerName);
+        cached.setProviders(providers);
+        try (final OutputStream os = new FileOutputStream(cache)) {
+            new MapperBuilder().setPretty(true).build().writeObject(cached, os);
+        } catch (final IOException e) {
+            System.err.println("Can't write " + CACHE_FILE + ": " + e.getMessage());
+        }
+        return providers;
+    }
 
-                    String comment = properties.getComment(name);
-                    comment = scrubText(comment);
-                    if (comment.isEmpty()) {
-                        comment = "FIXME";
-                    }
+    // based on org.apache.openejb.config.sys.WikiGenerator
+    private static Provider toProvider(final ServiceProvider serviceProvider) {
+        final List<Property> properties = new ArrayList<>();
+        final SuperProperties superProperties = (SuperProperties) serviceProvider.getProperties();
+        for (final Object key : superProperties.keySet()) {
+            if (key instanceof String) {
+                final String name = (String) key;
+                if ("SkipImplicitAttributes".equals(name)) {
+                    continue;
+                }
 
-                    defaults.put(name, String.valueOf(value));
-                    comments.put(name, comment);
+                final Map<String, String> attributes = superProperties.getAttributes(name);
+                if (attributes.containsKey("hidden")) {
+                    continue;
                 }
+
+                final String comment = superProperties.getComment(name);
+                final Property property = new Property();
+                property.setName(name);
+                property.setDefaultValue(String.valueOf(superProperties.getProperty(name)));
+                property.setComment(comment == null || comment.isEmpty() ? "FIXME" : comment);
+                properties.add(property);
             }
         }
 
+        final Provider provider = new Provider();
+        provider.setId(serviceProvider.getId());
+        provider.setService(serviceProvider.getService());
+        provider.setClassName(serviceProvider.getClassName());
+        provider.setTypes(new ArrayList<>(serviceProvider.getTypes()));
+        provider.setProperties(properties);
+        return provider;
+    }
+
+    private static String render(final Provider provider) {
+        final StringWriter buffer = new StringWriter();
+        final PrintWriter out = new PrintWriter(buffer) {
+            @Override
+            public void println() { // stable fragments whatever the platform is
+                write('\n');
+            }
+        };
+
         final String type = provider.getTypes().get(0);
         out.println("=== " + type);
         out.println();
@@ -141,15 +210,15 @@ public class ServiceJarHelper {
         out.println("[source,xml]");
         out.println("----");
         out.print("<" + provider.getService() + " id=\"Foo\" type=\"" + type + "\"");
-        if (defaults.isEmpty()) {
+        if (provider.getProperties().isEmpty()) {
             out.println(" />");
         } else {
             out.println(">");
-            for (final Map.Entry<String, String> entry : defaults.entrySet()) {
+            for (final Property property : provider.getProperties()) {
                 out.print("    ");
-                out.print(entry.getKey());
+                out.print(property.getName());
                 out.print(" = ");
-                out.println(entry.getValue());
+                out.println(property.getDefaultValue());
             }
             out.println("</" + provider.getService() + ">");
         }
@@ -160,33 +229,50 @@ public class ServiceJarHelper {
         out.println("[source,properties]");
         out.println("----");
         out.println("Foo = new://" + provider.getService() + "?type=" + type);
-        for (final Map.Entry<String, String> entry : defaults.entrySet()) {
+        for (final Property property : provider.getProperties()) {
             out.print("Foo.");
-            out.print(entry.getKey());
+            out.print(property.getName());
             out.print(" = ");
-            out.println(entry.getValue());
+            out.println(property.getDefaultValue());
         }
         out.println("----");
         out.println();
 
-        if (!properties.isEmpty()) {
+        if (!provider.getProperties().isEmpty()) {
             out.println("==== Configuration");
             out.println();
-            for (final Map.Entry<String, String> entry : comments.entrySet()) {
-                out.println("===== " + entry.getKey());
+            for (final Property property : provider.getProperties()) {
+                out.println("===== " + property.getName());
                 out.println();
-                out.println(entry.getValue());
+                out.println(property.getComment());
                 out.println();
             }
         }
 
-        out.println();
+        out.flush();
+        return buffer.toString();
     }
 
-    private String scrubText(String text) {
-        if (text == null) {
-            text = "";
-        }
-        return text;
+    @Data
+    public static class ProviderCache {
+        private String version;
+        private String providerName;
+        private List<Provider> providers;
+    }
+
+    @Data
+    public static class Provider {
+        private String id;
+        private String service;
+        private String className;
+        private List<String> types;
+        private List<Property> properties;
+    }
+
+    @Data
+    public static class Property {
+        private String name;
+        private String defaultValue;
+        private String comment;
     }
 }
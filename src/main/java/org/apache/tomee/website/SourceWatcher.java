@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+// watches a whole source tree (new folders are registered on the fly) and coalesces the events:
+// the listener gets the change set once the tree stayed quiet for a short period (editors
+// often write a file several times) or when changes are pending for too long.
+// A null change set means events were lost (overflow) so everything must be rebuilt.
+public class SourceWatcher implements AutoCloseable {
+    private final long quietPeriod;
+    private final long maxDelay;
+    private final Consumer<Collection<Path>> listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> folders = new ConcurrentHashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final Thread thread;
+
+    public SourceWatcher(final Path root, final long quietPeriod, final Consumer<Collection<Path>> listener) throws IOException {
+        this.quietPeriod = quietPeriod;
+        this.maxDelay = quietPeriod * 10;
+        this.listener = listener;
+        this.watchService = root.getFileSystem().newWatchService();
+        register(root, null);
+
+        this.thread = new Thread(this::watch);
+        this.thread.setName("jbake-file-watcher");
+        this.thread.start();
+    }
+
+    @Override
+    public void close() {
+        running.set(false);
+        try {
+            watchService.close();
+        } catch (final IOException ioe) {
+            // not important
+        }
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            Thread.interrupted();
+        }
+    }
+
+    private void watch() {
+        final Collection<Path> changes = new HashSet<>();
+        boolean overflow = false;
+        long firstChange = -1;
+        while (running.get()) {
+            final boolean pending = overflow || !changes.isEmpty();
+            final WatchKey key;
+            try {
+                key = watchService.poll(pending ? quietPeriod : TimeUnit.SECONDS.toMillis(1), TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.interrupted();
+                break;
+            } catch (final ClosedWatchServiceException cwse) {
+                if (running.get()) {
+                    throw new IllegalStateException(cwse);
+                }
+                break;
+            }
+
+            if (key != null) {
+                final Path folder = folders.get(key);
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    final WatchEvent.Kind<?> kind = event.kind();
+                    if (kind == OVERFLOW || folder == null) {
+                        overflow = true;
+                        continue;
+                    }
+
+                    final Path updatedPath = folder.resolve(Path.class.cast(event.context()));
+                    final String name = updatedPath.getFileName().toString();
+                    if (name.contains("___jb") || name.endsWith("~")) { // editor temporary files
+                        continue;
+                    }
+
+                    if (kind == ENTRY_CREATE && Files.isDirectory(updatedPath)) {
+                        try {
+                            register(updatedPath, changes);
+                        } catch (final IOException e) {
+                            overflow = true;
+                        }
+                    } else if (kind == ENTRY_DELETE || Files.isRegularFile(updatedPath)) {
+                        changes.add(updatedPath);
+                    }
+                }
+                if (!key.reset()) { // folder deleted
+                    folders.remove(key);
+                }
+            }
+
+            if (!overflow && changes.isEmpty()) {
+                firstChange = -1;
+                continue;
+            }
+
+            final long now = System.currentTimeMillis();
+            if (firstChange < 0) {
+                firstChange = now;
+            }
+            if (key == null || now - firstChange >= maxDelay) { // quiet or waiting for too long
+                try {
+                    listener.accept(overflow ? null : new HashSet<>(changes));
+                } catch (final RuntimeException re) {
+                    re.printStackTrace();
+                }
+                changes.clear();
+                overflow = false;
+                firstChange = -1;
+            }
+        }
+    }
+
+    // files already present in a new folder were created before we registered it so they are changes too
+    private void register(final Path folder, final Collection<Path> changes) throws IOException {
+        Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                folders.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (changes != null) {
+                    changes.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
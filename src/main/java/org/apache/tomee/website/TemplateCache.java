@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import groovy.text.Template;
+import lombok.Data;
+import org.jbake.app.FileUtil;
+import org.jbake.app.Renderer;
+import org.jbake.template.AbstractTemplateEngine;
+import org.jbake.template.GroovyTemplateEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.toSet;
+
+// compiled groovy templates shared by all the renderers of the JVM (jbake 2.4 GroovyTemplateEngine keeps them in a
+// private map of each renderer so they were compiled again at each bake). Entries are keyed by template path and
+// validated against the content (sha1, checked only when the size/date changed) so only edited templates are compiled
+// again, includes (header.gsp...) included. Compiled classes can't be reused by another JVM so nothing is persisted.
+public final class TemplateCache {
+    private static final Map<String, Compiled> TEMPLATES = new ConcurrentHashMap<>();
+    private static final AtomicLong COMPILATIONS = new AtomicLong();
+
+    private TemplateCache() {
+        // no-op
+    }
+
+    /**
+     * @return the number of templates compiled since the JVM started.
+     */
+    public static long compilations() {
+        return COMPILATIONS.get();
+    }
+
+    // no hook in jbake 2.4: Renderer#renderingEngine -> DelegatingTemplateEngine#renderers -> TemplateEngines#templateEngines
+    public static Renderer install(final Renderer renderer, final File templatesPath) {
+        try {
+            final Object delegating = read(renderer, "renderingEngine");
+            final Object engines = read(delegating, "renderers");
+            @SuppressWarnings("unchecked")
+            final Map<String, AbstractTemplateEngine> byExtension = (Map<String, AbstractTemplateEngine>) read(engines, "templateEngines");
+            for (final AbstractTemplateEngine engine : byExtension.values()) {
+                if (GroovyTemplateEngine.class.isInstance(engine)) {
+                    final Field cache = GroovyTemplateEngine.class.getDeclaredField("cachedTemplates");
+                    cache.setAccessible(true);
+                    cache.set(engine, new Folder(templatesPath));
+                }
+            }
+        } catch (final NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException("Unsupported jbake version", e);
+        }
+        return renderer;
+    }
+
+    private static Object read(final Object instance, final String name) throws NoSuchFieldException, IllegalAccessException {
+        final Field field = instance.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(instance);
+    }
+
+    private static String hash(final byte[] content) {
+        try {
+            final StringBuilder hex = new StringBuilder(40);
+            for (final byte b : MessageDigest.getInstance("SHA-1").digest(content)) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // GroovyTemplateEngine only uses get(name) (null = compile it) and put(name, template)
+    private static class Folder extends AbstractMap<String, Template> {
+        private final File base;
+
+        private Folder(final File base) {
+            this.base = base;
+        }
+
+        @Override
+        public Template get(final Object name) {
+            final File file = new File(base, String.valueOf(name));
+            final Compiled compiled = TEMPLATES.get(file.getAbsolutePath());
+            if (compiled == null) {
+                return null;
+            }
+            if (compiled.getLastModified() == file.lastModified() && compiled.getLength() == file.length()) {
+                return compiled.getTemplate();
+            }
+
+            final Stat stat = stat(file);
+            if (stat == null || !stat.getHash().equals(compiled.getHash())) {
+                return null;
+            }
+            TEMPLATES.put(file.getAbsolutePath(), new Compiled(stat.getLastModified(), stat.getLength(), stat.getHash(), compiled.getTemplate()));
+            return compiled.getTemplate();
+        }
+
+        @Override
+        public Template put(final String name, final Template template) {
+            COMPILATIONS.incrementAndGet();
+            final File file = new File(base, name);
+            final Stat stat = stat(file);
+            if (stat != null) {
+                TEMPLATES.put(file.getAbsolutePath(), new Compiled(stat.getLastModified(), stat.getLength(), stat.getHash(), template));
+            }
+            return null;
+        }
+
+        // the templates of this folder (compiled ones, not validated against the files)
+        @Override
+        public Set<Entry<String, Template>> entrySet() {
+            final Path root = base.getAbsoluteFile().toPath();
+            return TEMPLATES.entrySet().stream()
+                    .filter(e -> Paths.get(e.getKey()).startsWith(root))
+                    .map(e -> new SimpleImmutableEntry<>(FileUtil.asPath(root.relativize(Paths.get(e.getKey())).toString()), e.getValue().getTemplate()))
+                    .collect(toSet());
+        }
+
+        private static Stat stat(final File file) {
+            try {
+                final long lastModified = file.lastModified(); // before reading, a concurrent update will be seen next time
+                final byte[] content = Files.readAllBytes(file.toPath());
+                return new Stat(lastModified, content.length, hash(content));
+            } catch (final IOException e) {
+                return null;
+            }
+        }
+    }
+
+    @Data
+    private static class Stat {
+        private final long lastModified;
+        private final long length;
+        private final String hash;
+    }
+
+    @Data
+    private static class Compiled {
+        private final long lastModified;
+        private final long length;
+        private final String hash;
+        private final Template template;
+    }
+}
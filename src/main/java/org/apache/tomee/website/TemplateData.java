@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import lombok.Data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+
+// models used by the templates, loaded before the rendering (in parallel with the bake startup) instead of
+// calling the loaders (network, caches) from the templates. They are exposed as ${config.data.<model>}
+// (see IncrementalOven) so the templates stay pure. A loader failure is logged and gives an empty model.
+@Data
+public class TemplateData {
+    public static final String CONTRIBUTORS = "community/contributors.adoc";
+
+    private final Collection<Contributors.Contributor> contributors;
+    private final Examples.ExampleWrapper examples;
+
+    /**
+     * @param contents the content folder of the site.
+     */
+    public static CompletableFuture<TemplateData> load(final File contents) {
+        final Executor executor = task -> { // the loaders block on I/O, don't use the common pool
+            final Thread thread = new Thread(task);
+            thread.setName("template-data");
+            thread.setDaemon(true);
+            thread.start();
+        };
+        final CompletableFuture<Collection<Contributors.Contributor>> contributors = CompletableFuture
+                .supplyAsync(() -> loadContributors(new File(contents, CONTRIBUTORS).toPath()), executor)
+                .exceptionally(e -> {
+                    System.err.println("Can't load contributors: " + e.getMessage());
+                    return emptyList();
+                });
+        final CompletableFuture<Examples.ExampleWrapper> examples = CompletableFuture
+                .supplyAsync(Examples::loadAll, executor)
+                .exceptionally(e -> {
+                    System.err.println("Can't load examples: " + e.getMessage());
+                    return new Examples.ExampleWrapper(emptyMap(), 0);
+                });
+        return contributors.thenCombine(examples, TemplateData::new);
+    }
+
+    // the list is the listing block (----) of the page
+    private static Collection<Contributors.Contributor> loadContributors(final Path source) {
+        try {
+            final List<String> lines = Files.readAllLines(source, StandardCharsets.UTF_8);
+            final int start = lines.indexOf("----");
+            final int end = start < 0 ? -1 : lines.subList(start + 1, lines.size()).indexOf("----");
+            if (end < 0) {
+                throw new IllegalArgumentException("No contributor listing in " + source);
+            }
+            return Contributors.loadList(String.join("\n", lines.subList(start + 1, start + 1 + end)));
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import org.asciidoctor.Asciidoctor;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+// each header form is compared to the expected attributes and to what asciidoctor reads for the same keys
+public class AdocHeaderScannerTest {
+    private static Asciidoctor asciidoctor;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void boot() {
+        asciidoctor = Asciidoctor.Factory.create();
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        asciidoctor.shutdown();
+    }
+
+    @Test
+    public void title() throws IOException {
+        assertHeader("\uFEFF= Title\n:jbake-type: page\n:jbake-tomeepdf:\n\ncontent\n\n:after: body\n",
+                map("jbake-type", "page", "jbake-tomeepdf", ""), "after");
+    }
+
+    @Test
+    public void authorAndRevision() throws IOException {
+        assertHeader("= Title\nJane Doe <jane@example.org>\nv1.0, 2017-01-01: draft\n:jbake-type: page\n\ntext\n",
+                map("jbake-type", "page"));
+    }
+
+    @Test
+    public void unset() throws IOException {
+        assertHeader("= Title\n:a: 1\n:b: 2\n:a!:\n:!b:\n:c: 3\n", map("c", "3"), "a", "b");
+    }
+
+    @Test
+    public void comments() throws IOException {
+        assertHeader("// line comment\n////\n:hidden: 1\n////\n= Title\n// inside the header\n:shown: 2\n\ntext\n",
+                map("shown", "2"), "hidden");
+    }
+
+    @Test
+    public void lineContinuation() throws IOException {
+        assertHeader("= Title\n:description: a long \\\n  value \\\n  end\n:next: 1\n",
+                map("description", "a long value end", "next", "1"));
+    }
+
+    @Test
+    public void noTitle() throws IOException {
+        assertHeader(":jbake-type: page\n:jbake-status: published\n\n= Not a document title\n",
+                map("jbake-type", "page", "jbake-status", "published"));
+    }
+
+    private void assertHeader(final String adoc, final Map<String, String> expected, final String... absent) throws IOException {
+        final File file = folder.newFile("doc.adoc");
+        Files.write(file.toPath(), adoc.getBytes(StandardCharsets.UTF_8));
+        assertEquals(expected, AdocHeaderScanner.attributes(file.toPath()));
+
+        final Map<String, Object> reference = asciidoctor.readDocumentHeader(file).getAttributes();
+        expected.forEach((key, value) -> assertEquals(key, value, reference.get(key)));
+        for (final String key : absent) {
+            assertFalse(key, reference.containsKey(key));
+        }
+    }
+
+    private static Map<String, String> map(final String... keyValues) {
+        final Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put(keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MarkdownToAsciidocTest {
+    @Test
+    public void fencedBlocks() {
+        assertEquals("\n[source,java]\n----\nint a = 1;\n# not a title\n* not a list\n----\n\nafter\n",
+                MarkdownToAsciidoc.convert("```java\nint a = 1;\n# not a title\n* not a list\n```\nafter"));
+        assertEquals("\n[source]\n----\nplain\n----\n\n", MarkdownToAsciidoc.convert("~~~\nplain\n~~~"));
+    }
+
+    @Test
+    public void nestedLists() {
+        assertEquals("* a\n** b\n*** c\n** d\n* e\n\ntext\n",
+                MarkdownToAsciidoc.convert("* a\n  * b\n    * c\n  * d\n* e\n\ntext"));
+        assertEquals("- one\n** two\n*** three\n", MarkdownToAsciidoc.convert("- one\n    - two\n        + three"));
+    }
+
+    @Test
+    public void inlineCode() {
+        assertEquals("Use `+*.jar+` and `+my_var+` or `foo`\n", MarkdownToAsciidoc.convert("Use `*.jar` and `my_var` or `foo`"));
+        assertEquals("`+a*b+` stays, `[x](y)` is no link but link:y[x] is\n",
+                MarkdownToAsciidoc.convert("`+a*b+` stays, `[x](y)` is no link but [x](y) is"));
+        assertEquals("unclosed `*code and link:u[l]\n", MarkdownToAsciidoc.convert("unclosed `*code and [l](u)"));
+    }
+
+    @Test
+    public void links() {
+        assertEquals("link:http://a[a] and link:b.html[b], [c] (no link), arr[0](1\n",
+                MarkdownToAsciidoc.convert("[a](http://a) and [b](../b/README.html), [c] (no link), arr[0](1"));
+        assertEquals("* top\n** nested `+a_b+` and link:http://x[doc]\n",
+                MarkdownToAsciidoc.convert("* top\n  * nested `a_b` and [doc](http://x)"));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.website;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MavenVersionTest {
+    // left, right, expected sign of left.compareTo(right) as given by maven-artifact 3.9.6 ComparableVersion
+    private static final Object[][] PAIRS = {
+            {"1", "1.0.0", 0},
+            {"1.0", "1-0", 0},
+            {"1.0-1", "1-1", 0},
+            {"1.0.1", "1.0.10", -1},
+            {"1.0.9", "1.0.10", -1},
+            {"1.0.0-M1", "1.0.0-rc1", -1},
+            {"1.0.0-rc1", "1.0.0", -1},
+            {"1.0.0", "1.0.0-sp1", -1},
+            {"1.0.0-sp1", "1.0.1", -1},
+            {"1-alpha1", "1-a1", 0},
+            {"1-beta1", "1-b1", 0},
+            {"1-milestone1", "1-m1", 0},
+            {"1-a", "1-alpha", 1}, // a alone is an unknown qualifier
+            {"1-cr1", "1-rc1", 0},
+            {"1-ga", "1", 0},
+            {"1-final", "1-release", 0},
+            {"1-snapshot", "1", -1},
+            {"1-rc1", "1-snapshot", -1},
+            {"1-sp", "1-foo", -1},
+            {"1-foo", "1-bar", 1},
+            {"1.1", "1-sp", 1},
+            {"1.1", "1-1", 1},
+            {"1-1", "1-sp", 1},
+            {"1-0.1", "1", 1},
+            {"1.0alpha1", "1.0-alpha-1", 0},
+            {"1.0.a1", "1.0-a1", 0},
+            {"2.0.a", "2.0-a", 0},
+            {"2.0.a", "2.0-1", -1},
+            {"2.0.rc1", "2.0-rc1", 0},
+            {"2.0.RC1", "2.0-rc1", 0},
+            {"0.a", "0-foo", -1},
+            {"ga.sp", "m", 1},
+            {"8.0.0-M1", "7.1.4", 1},
+            {"7.0.0-M3", "7.0.0", -1},
+            {"7.0.0-M3", "7.0.0-M10", -1},
+            {"1.0.0-SNAPSHOT", "1.0.0-M1", 1},
+            {"100000000000000000000", "99999999999999999999", 1}
+    };
+
+    @Test
+    public void compareLikeMaven() {
+        for (final Object[] pair : PAIRS) {
+            final MavenVersion left = new MavenVersion(String.valueOf(pair[0]));
+            final MavenVersion right = new MavenVersion(String.valueOf(pair[1]));
+            final int expected = Integer.class.cast(pair[2]);
+            assertEquals(pair[0] + " vs " + pair[1], expected, Integer.signum(left.compareTo(right)));
+            assertEquals(pair[1] + " vs " + pair[0], -expected, Integer.signum(right.compareTo(left)));
+            assertEquals(pair[0] + " equals " + pair[1], expected == 0, left.equals(right));
+        }
+    }
+}